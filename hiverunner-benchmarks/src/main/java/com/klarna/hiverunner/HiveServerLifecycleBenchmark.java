@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.builder.HiveShellBuilder;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the phases of the life cycle of a HiveServer as driven by the StandaloneHiveRunner.
+ * <p/>
+ * Each invocation starts from a fresh sand box, so these are measured as single shots. The cost of the setup
+ * scripts, resources and scripts under test is the difference between the matching shellStart benchmark and
+ * {@link #shellStartEmpty(Sandbox)}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class HiveServerLifecycleBenchmark {
+
+    /**
+     * A fresh sand box and context for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class Sandbox {
+        TemporaryFolder baseDir;
+        HiveServerContext context;
+        HiveServerContainer container;
+
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            baseDir = new TemporaryFolder();
+            baseDir.create();
+            context = new StandaloneHiveServerContext(baseDir);
+            container = new HiveServerContainer();
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() {
+            if (container.isStarted()) {
+                container.tearDown();
+            }
+            baseDir.delete();
+        }
+
+        HiveShellBuilder shellBuilder() {
+            HiveShellBuilder builder = new HiveShellBuilder();
+            builder.setContext(context);
+            builder.setHiveServerContainer(container);
+            return builder;
+        }
+    }
+
+    /**
+     * A started HiveServer for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class StartedServer extends Sandbox {
+
+        @Setup(Level.Invocation)
+        public void start() {
+            container.init(Collections.<String, String>emptyMap(), context);
+        }
+    }
+
+    @Benchmark
+    public HiveServerContainer init(Sandbox sandbox) {
+        sandbox.container.init(Collections.<String, String>emptyMap(), sandbox.context);
+        return sandbox.container;
+    }
+
+    @Benchmark
+    public void tearDown(StartedServer server) {
+        server.container.tearDown();
+    }
+
+    @Benchmark
+    public HiveShell shellStartEmpty(Sandbox sandbox) {
+        HiveShellContainer shell = sandbox.shellBuilder().buildShell();
+        shell.start();
+        return shell;
+    }
+
+    @Benchmark
+    public HiveShell shellStartWithSetupScripts(Sandbox sandbox) {
+        HiveShellBuilder builder = sandbox.shellBuilder();
+        for (int i = 0; i < 10; i++) {
+            builder.addSetupScript("CREATE TABLE foo_" + i + " (id int, name string)");
+        }
+        HiveShellContainer shell = builder.buildShell();
+        shell.start();
+        return shell;
+    }
+
+    @Benchmark
+    public HiveShell shellStartWithResources(Sandbox sandbox) throws IOException {
+        HiveShellBuilder builder = sandbox.shellBuilder();
+        for (int i = 0; i < 10; i++) {
+            builder.addResource("${hiveconf:hadoop.tmp.dir}/foo_" + i + "/data.csv", WorkloadBenchmark.rows(1000));
+        }
+        HiveShellContainer shell = builder.buildShell();
+        shell.start();
+        return shell;
+    }
+
+    @Benchmark
+    public HiveShell shellStartWithScriptsUnderTest(Sandbox sandbox) throws IOException {
+        Path script = sandbox.baseDir.newFile("script_under_test.sql").toPath();
+        StringBuilder statements = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            statements.append("CREATE TABLE foo_").append(i).append(" (id int, name string);\n");
+        }
+        Files.write(script, statements.toString().getBytes(Charset.defaultCharset()));
+
+        HiveShellBuilder builder = sandbox.shellBuilder();
+        builder.setScriptsUnderTest(Collections.singletonList(script), Charset.defaultCharset());
+        HiveShellContainer shell = builder.buildShell();
+        shell.start();
+        return shell;
+    }
+
+    /**
+     * Latency of a trivial query on an already started HiveServer.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> executeQuery(WorkloadBenchmark.Workload workload) {
+        return workload.shell.executeQuery("SHOW TABLES");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass {@link StatementSplitter} to the look behind regex it replaced, on generated scripts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StatementSplitterBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int statements;
+
+    private String script;
+
+    @Setup
+    public void generateScript() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            builder.append("-- statement ").append(i).append('\n')
+                    .append("INSERT OVERWRITE TABLE foo_").append(i)
+                    .append(" SELECT id, concat(name, '\\t'), `value` FROM bar WHERE name <> \"baz\";\n");
+        }
+        script = builder.toString();
+    }
+
+    @Benchmark
+    public List<String> singlePass() {
+        return StatementSplitter.split(script);
+    }
+
+    @Benchmark
+    public String[] lookBehindRegex() {
+        return script.split("(?<=[^\\\\]);");
+    }
+}
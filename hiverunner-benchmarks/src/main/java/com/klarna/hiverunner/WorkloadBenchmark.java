@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.builder.HiveShellBuilder;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the latency of representative queries on a started HiveServer, modelled after the CTAS, partition
+ * and SerDe scenarios of the HiveRunner test suite.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WorkloadBenchmark {
+
+    private static final int ROWS = 10000;
+
+    /**
+     * A HiveServer with source, partitioned and SerDe tables, started once per trial.
+     */
+    @State(Scope.Thread)
+    public static class Workload {
+        TemporaryFolder baseDir;
+        HiveShellContainer shell;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            baseDir = new TemporaryFolder();
+            baseDir.create();
+
+            HiveShellBuilder builder = new HiveShellBuilder();
+            builder.setContext(new StandaloneHiveServerContext(baseDir));
+            builder.setHiveServerContainer(new HiveServerContainer());
+
+            builder.addResource("${hiveconf:hadoop.tmp.dir}/source/data.csv", rows(ROWS));
+            builder.addSetupScript("CREATE EXTERNAL TABLE source (id int, name string)" +
+                    " ROW FORMAT DELIMITED FIELDS TERMINATED BY ','" +
+                    " LOCATION '${hiveconf:hadoop.tmp.dir}/source'");
+
+            builder.addResource("${hiveconf:hadoop.tmp.dir}/partitioned/year=2013/data.csv", rows(ROWS));
+            builder.addResource("${hiveconf:hadoop.tmp.dir}/partitioned/year=2014/data.csv", rows(ROWS));
+            builder.addSetupScript("CREATE EXTERNAL TABLE partitioned (id int, name string)" +
+                    " PARTITIONED BY (year int)" +
+                    " ROW FORMAT DELIMITED FIELDS TERMINATED BY ','" +
+                    " LOCATION '${hiveconf:hadoop.tmp.dir}/partitioned'");
+            builder.addSetupScript("ALTER TABLE partitioned ADD PARTITION (year = 2013) PARTITION (year = 2014)");
+
+            builder.addResource("${hiveconf:hadoop.tmp.dir}/serde/data.txt", rows(ROWS).replace(',', '#'));
+            builder.addSetupScript("CREATE EXTERNAL TABLE serde (id string, name string)" +
+                    " ROW FORMAT SERDE 'org.apache.hadoop.hive.serde2.RegexSerDe'" +
+                    " WITH SERDEPROPERTIES (\"input.regex\" = \"([0-9]*)#(.*)\")" +
+                    " LOCATION '${hiveconf:hadoop.tmp.dir}/serde'");
+
+            shell = builder.buildShell();
+            shell.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            shell.tearDown();
+            baseDir.delete();
+        }
+    }
+
+    static String rows(int count) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            rows.append(i).append(",name_").append(i).append('\n');
+        }
+        return rows.toString();
+    }
+
+    @Benchmark
+    public void ctas(Workload workload) {
+        workload.shell.execute("DROP TABLE IF EXISTS ctas");
+        workload.shell.execute("CREATE TABLE ctas AS SELECT id, upper(name) AS name FROM source WHERE id % 2 = 0");
+    }
+
+    @Benchmark
+    public List<String> partitionPruning(Workload workload) {
+        return workload.shell.executeQuery("SELECT count(*) FROM partitioned WHERE year = 2014");
+    }
+
+    @Benchmark
+    public List<String> regexSerDe(Workload workload) {
+        return workload.shell.executeQuery("SELECT name FROM serde WHERE id = '42'");
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plan of a query as parsed from the output of EXPLAIN: the stages, their dependencies, and the operators and joins
+ * of each stage.
+ * <p/>
+ * The string form leaves out paths, expressions and other details that vary between runs, so that it can be
+ * compared to a golden file, see {@link PlanAssert}.
+ */
+public class ExplainPlan {
+
+    private static final String STAGE_DEPENDENCIES = "STAGE DEPENDENCIES:";
+    private static final String STAGE_PLANS = "STAGE PLANS:";
+    private static final String STAGE_PREFIX = "Stage: ";
+    private static final String CONDITION_MAP = "condition map:";
+
+    private static final Pattern DEPENDENCY =
+            Pattern.compile("(\\S+)(?: is a root stage)?(?: depends on stages: (.+?))?"
+                    + "(?: has a backup stage: (\\S+))?(?: , consists of (.+))?");
+    private static final Pattern OPERATOR = Pattern.compile("[A-Z][A-Za-z ]* Operator|TableScan|ListSink");
+    private static final Pattern JOIN_CONDITION = Pattern.compile("([A-Za-z ]+? Join) ?\\d+ to \\d+");
+
+    private final List<String> text;
+    private final Map<String, Stage> stages;
+
+    private ExplainPlan(List<String> text, Map<String, Stage> stages) {
+        this.text = Collections.unmodifiableList(text);
+        this.stages = Collections.unmodifiableMap(stages);
+    }
+
+    /**
+     * Parses the rows returned by EXPLAIN.
+     *
+     * @throws IllegalArgumentException if the rows are not EXPLAIN output
+     */
+    public static ExplainPlan parse(List<String> rows) {
+        int dependencies = rows.indexOf(STAGE_DEPENDENCIES);
+        int plans = rows.indexOf(STAGE_PLANS);
+        Preconditions.checkArgument(dependencies >= 0 && plans > dependencies,
+                "Not the output of EXPLAIN: %s", rows);
+
+        Map<String, Stage> stages = new LinkedHashMap<>();
+        Map<String, Matcher> dependencyLines = new LinkedHashMap<>();
+        for (String row : rows.subList(dependencies + 1, plans)) {
+            if (row.trim().isEmpty()) {
+                continue;
+            }
+            Matcher matcher = DEPENDENCY.matcher(row.trim());
+            Preconditions.checkArgument(matcher.matches(), "Unexpected stage dependency: %s", row);
+            dependencyLines.put(matcher.group(1), matcher);
+        }
+
+        Stage stage = null;
+        for (String row : rows.subList(plans + 1, rows.size())) {
+            String line = row.trim();
+            if (line.startsWith(STAGE_PREFIX)) {
+                String id = line.substring(STAGE_PREFIX.length());
+                Matcher dependency = dependencyLines.get(id);
+                stage = new Stage(id, split(dependency == null ? null : dependency.group(2)),
+                        dependency == null ? null : dependency.group(3),
+                        split(dependency == null ? null : dependency.group(4)));
+                stages.put(id, stage);
+            } else if (stage != null && !line.isEmpty()) {
+                stage.add(line);
+            }
+        }
+        return new ExplainPlan(new ArrayList<>(rows), stages);
+    }
+
+    private static List<String> split(String stageIds) {
+        if (stageIds == null) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>();
+        for (String id : stageIds.split(",")) {
+            ids.add(id.trim());
+        }
+        return ids;
+    }
+
+    /**
+     * Stages in the order listed by EXPLAIN.
+     */
+    public List<Stage> getStages() {
+        return new ArrayList<>(stages.values());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the plan has no stage with the given id
+     */
+    public Stage getStage(String id) {
+        Stage stage = stages.get(id);
+        Preconditions.checkArgument(stage != null, "No stage %s in plan %s", id, stages.keySet());
+        return stage;
+    }
+
+    /**
+     * Stages of the given type, e.g. 'Map Reduce', 'Map Reduce Local Work', 'Fetch Operator' or 'Move Operator'.
+     */
+    public List<Stage> getStages(String type) {
+        List<Stage> result = new ArrayList<>();
+        for (Stage stage : stages.values()) {
+            if (stage.getType().equals(type)) {
+                result.add(stage);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Joins of all stages. A join in a conditional stage is listed once per alternative.
+     */
+    public List<Join> getJoins() {
+        List<Join> joins = new ArrayList<>();
+        for (Stage stage : stages.values()) {
+            joins.addAll(stage.getJoins());
+        }
+        return joins;
+    }
+
+    /**
+     * The rows returned by EXPLAIN.
+     */
+    public List<String> getText() {
+        return text;
+    }
+
+    /**
+     * One line per stage with its type and dependencies, followed by one indented line per operator.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : stages.values()) {
+            builder.append(stage).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A stage of the plan, e.g. a MapReduce job, a local task or a move.
+     */
+    public static final class Stage {
+
+        private final String id;
+        private final List<String> dependencies;
+        private final String backupStage;
+        private final List<String> conditionalStages;
+        private String type;
+        private final List<String> operators = new ArrayList<>();
+        private final List<Join> joins = new ArrayList<>();
+        private boolean inConditionMap = false;
+
+        private Stage(String id, List<String> dependencies, String backupStage, List<String> conditionalStages) {
+            this.id = id;
+            this.dependencies = Collections.unmodifiableList(dependencies);
+            this.backupStage = backupStage;
+            this.conditionalStages = Collections.unmodifiableList(conditionalStages);
+        }
+
+        private void add(String line) {
+            if (type == null) {
+                type = line.endsWith(":") ? line.substring(0, line.length() - 1) : line;
+                return;
+            }
+            if (inConditionMap) {
+                Matcher condition = JOIN_CONDITION.matcher(line);
+                if (condition.matches()) {
+                    joins.get(joins.size() - 1).types.add(condition.group(1));
+                    return;
+                }
+                inConditionMap = false;
+            }
+            if (OPERATOR.matcher(line).matches()) {
+                operators.add(line);
+                if (line.endsWith("Join Operator")) {
+                    joins.add(new Join(line));
+                }
+            } else if (line.equals(CONDITION_MAP) && !joins.isEmpty()) {
+                inConditionMap = true;
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * E.g. 'Map Reduce', 'Map Reduce Local Work', 'Fetch Operator', 'Move Operator' or 'Conditional Operator'.
+         */
+        public String getType() {
+            return type == null ? "" : type;
+        }
+
+        /**
+         * Ids of the stages this stage depends on.
+         */
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * Id of the stage run instead of this one if it fails, e.g. the shuffle join behind a conditional map join,
+         * or null if there is none.
+         */
+        public String getBackupStage() {
+            return backupStage;
+        }
+
+        /**
+         * Ids of the alternative stages of a conditional stage, of which only some are run.
+         */
+        public List<String> getConditionalStages() {
+            return conditionalStages;
+        }
+
+        /**
+         * Names of the operators of this stage in the order listed by EXPLAIN, e.g. 'TableScan', 'Map Join Operator'
+         * or 'Reduce Output Operator'.
+         */
+        public List<String> getOperators() {
+            return Collections.unmodifiableList(operators);
+        }
+
+        public List<Join> getJoins() {
+            return Collections.unmodifiableList(joins);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(id).append(": ").append(getType());
+            if (!dependencies.isEmpty()) {
+                builder.append(" depends on ").append(Joiner.on(", ").join(dependencies));
+            }
+            if (backupStage != null) {
+                builder.append(" backed up by ").append(backupStage);
+            }
+            if (!conditionalStages.isEmpty()) {
+                builder.append(" consists of ").append(Joiner.on(", ").join(conditionalStages));
+            }
+            int join = 0;
+            for (String operator : operators) {
+                builder.append("\n  ").append(operator);
+                if (operator.endsWith("Join Operator")) {
+                    builder.append(' ').append(joins.get(join++).getTypes());
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A join operator and the types of its join conditions, e.g. 'Inner Join' or 'Left Outer Join'.
+     */
+    public static final class Join {
+
+        private static final List<String> MAP_SIDE = Arrays.asList("Map Join Operator", "SMB Map Join Operator");
+
+        private final String operator;
+        private final List<String> types = new ArrayList<>();
+
+        private Join(String operator) {
+            this.operator = operator;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        /**
+         * True for joins done in the mappers, false for joins that shuffle all their inputs to the reducers.
+         */
+        public boolean isMapJoin() {
+            return MAP_SIDE.contains(operator);
+        }
+
+        public List<String> getTypes() {
+            return Collections.unmodifiableList(types);
+        }
+
+        @Override
+        public String toString() {
+            return operator + " " + types;
+        }
+    }
+}
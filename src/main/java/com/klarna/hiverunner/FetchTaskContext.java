@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
+
+/**
+ * Standalone context that answers selects, filters and limits over tables and partitions with a fetch task reading
+ * the table files directly, and queries over partition columns only from the meta store, where Hive deems it safe.
+ * Queries that need a shuffle still launch a local MapReduce job.
+ */
+class FetchTaskContext extends StandaloneHiveServerContext {
+
+    FetchTaskContext(TemporaryFolder basedir) {
+        super(basedir);
+    }
+
+    @Override
+    protected void configureMapReduceOptimizations(HiveConf conf) {
+        super.configureMapReduceOptimizations(conf);
+        conf.setBoolVar(HIVEMETADATAONLYQUERIES, true);
+    }
+
+    @Override
+    protected void configureFetchTaskConversion(HiveConf conf) {
+        conf.setVar(HIVEFETCHTASKCONVERSION, "more");
+    }
+}
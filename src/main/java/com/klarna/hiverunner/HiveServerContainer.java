@@ -16,19 +16,47 @@
 
 package com.klarna.hiverunner;
 
+import com.google.common.base.Preconditions;
 import com.klarna.reflection.ReflectionUtils;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.HiveMetaStore;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
 import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.ql.MapRedStats;
+import org.apache.hadoop.hive.ql.log.PerfLogger;
+import org.apache.hadoop.hive.ql.metadata.Hive;
 import org.apache.hadoop.hive.ql.parse.VariableSubstitution;
+import org.apache.hadoop.hive.ql.plan.api.Query;
+import org.apache.hadoop.hive.ql.plan.api.Stage;
+import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.service.HiveServer;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.thrift.TException;
 import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HiveServer wrapper
@@ -37,10 +65,60 @@ import java.util.Map;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HiveServerContainer.class);
 
+    private static final String HSQLDB_URL_PREFIX = "jdbc:hsqldb:";
+
+    /**
+     * Prefixes of the properties read when the HiveServer, its meta store and file systems are created.
+     */
+    static final List<String> STARTUP_PROPERTY_PREFIXES =
+            Collections.unmodifiableList(Arrays.asList("javax.jdo.", "datanucleus.", "hive.metastore.", "fs."));
+
     private HiveServer.HiveServerHandler client;
 
     private HiveServerContext context;
 
+    /**
+     * Hive keeps the session of the HiveServer in a thread local. Kept here so that the session may be attached
+     * to another thread than the one starting the HiveServer.
+     */
+    private SessionState sessionState;
+
+    /**
+     * The HiveConf as it was right after the HiveServer was started, without any test case properties.
+     */
+    private Properties baselineConfig;
+
+    /**
+     * The HiveConf the HiveServer was started with.
+     */
+    private Properties startupConfig;
+
+    /**
+     * All files and directories in the sand box right after the HiveServer was started.
+     */
+    private Set<Path> baselineFiles;
+
+    /**
+     * Files of the sand box in the {@link InMemoryFileSystem}, if any.
+     */
+    private Set<String> baselineMemoryFiles;
+
+    /**
+     * Cursor over the result of the last query, if streamed. Closed by any following statement.
+     */
+    private ResultCursor openCursor;
+
+    private PhaseListener phaseListener = PhaseListener.NO_OP;
+
+    /**
+     * The last statement executed through this container and what is known about it up front, see
+     * {@link #getLastQueryProfile()}.
+     */
+    private String lastStatement;
+    private long lastStatementStartMillis;
+    private long lastStatementNanos;
+    private long lastRowsFetched;
+
     HiveServerContainer() {
     }
 
@@ -48,32 +126,186 @@ import java.util.Map;
         return client;
     }
 
+    public PhaseListener getPhaseListener() {
+        return phaseListener;
+    }
+
+    /**
+     * Sets the listener receiving the timings of this HiveServer, replacing any previous listener.
+     */
+    public void setPhaseListener(PhaseListener phaseListener) {
+        this.phaseListener = phaseListener == null ? PhaseListener.NO_OP : phaseListener;
+    }
+
     /**
      * Will start the HiveServer.
      * @param testConfig Specific test case properties. Will be merged with the HiveConf of the context
      * @param context    The context configuring the HiveServer and it's environment
      */
     public void init(Map<String, String> testConfig, HiveServerContext context) {
+        long start = System.nanoTime();
+        startHiveServer(testConfig, context);
+        phaseListener.phaseFinished(PhaseListener.Phase.SERVER_INIT, null, System.nanoTime() - start);
+    }
+
+    private void startHiveServer(Map<String, String> testConfig, HiveServerContext context) {
 
         this.context = context;
 
         HiveConf hiveConf = context.getHiveConf();
 
+        Properties contextConfig = hiveConf.getAllProperties();
+
         // merge test case properties with hive conf before HiveServer is started.
         for (Map.Entry<String, String> property : testConfig.entrySet()) {
             hiveConf.set(property.getKey(), property.getValue());
         }
 
         try {
-            client = new HiveServer.HiveServerHandler(hiveConf);
+            synchronized (HiveMetaStore.HMSHandler.class) {
+                // Hive will only create the default database for the first meta store in the JVM unless this is reset.
+                ReflectionUtils.setStaticField(HiveMetaStore.HMSHandler.class, "createDefaultDB", false);
+                client = new HiveServer.HiveServerHandler(hiveConf);
+            }
         } catch (MetaException e) {
             throw new IllegalStateException("Failed to create HiveServer :" + e.getMessage(), e);
         }
 
+        sessionState = SessionState.get();
+        startupConfig = hiveConf.getAllProperties();
+
         // Smoke test HiveServer started
         pingHiveServer();
+
+        captureBaseline(testConfig, contextConfig);
+    }
+
+    /**
+     * Will start the HiveServer from a snapshot of a previously started HiveServer, bypassing its setup.
+     * @param testConfig Specific test case properties. Will be merged with the HiveConf of the context
+     * @param context    The context configuring the HiveServer and it's environment
+     * @param snapshot   The snapshot to restore into the sand box of the context
+     */
+    public void init(Map<String, String> testConfig, HiveServerContext context, HiveServerSnapshot snapshot) {
+        long start = System.nanoTime();
+        Path baseDir = context.getBaseDir().getRoot().toPath();
+        try {
+            snapshot.restoreFiles(baseDir);
+            context.getHiveConf().setVar(HiveConf.ConfVars.METASTORECONNECTURLKEY, snapshot.restoreMetaStore(baseDir));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to restore snapshot " + snapshot.getDirectory() + ": "
+                    + e.getMessage(), e);
+        }
+
+        startHiveServer(testConfig, context);
+
+        try {
+            client.execute("USE " + snapshot.getDatabase());
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to restore current database: " + e.getMessage(), e);
+        }
+        applyTestConfig(snapshot.getConfig(baseDir));
+        sessionState.getHiveVariables().putAll(snapshot.getVariables(baseDir));
+        phaseListener.phaseFinished(PhaseListener.Phase.SERVER_INIT, "snapshot", System.nanoTime() - start);
+
+        LOGGER.info("Restored HiveServer instance from snapshot " + snapshot.getDirectory());
     }
 
+    /**
+     * Captures the meta store, the sand box and the session state of this HiveServer into the given directory.
+     * Requires the meta store of the context to be a HSQLDB database.
+     * @param setupMillis Time it took to start and set up this HiveServer, kept with the snapshot
+     */
+    public HiveServerSnapshot snapshot(Path directory, long setupMillis) {
+        HiveConf hiveConf = client.getHiveConf();
+
+        Map<String, String> changedConfig = new HashMap<>();
+        Properties currentConfig = hiveConf.getAllProperties();
+        for (String key : currentConfig.stringPropertyNames()) {
+            String value = currentConfig.getProperty(key);
+            if (!value.equals(baselineConfig.getProperty(key))) {
+                changedConfig.put(key, value);
+            }
+        }
+
+        try (Connection metaStore = DriverManager.getConnection(context.getMetaStoreUrl(),
+                hiveConf.getVar(HiveConf.ConfVars.METASTORE_CONNECTION_USER_NAME),
+                hiveConf.getVar(HiveConf.ConfVars.METASTOREPWD))) {
+            HiveServerSnapshot snapshot = HiveServerSnapshot.capture(directory, metaStore,
+                    getBaseDir().getRoot().toPath(), sessionState.getCurrentDatabase(), changedConfig,
+                    sessionState.getHiveVariables(), setupMillis);
+            LOGGER.info("Captured HiveServer snapshot " + directory);
+            return snapshot;
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("Failed to capture snapshot " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    SessionState getSessionState() {
+        return sessionState;
+    }
+
+    public boolean isStarted() {
+        return client != null;
+    }
+
+    /**
+     * Makes the session of the HiveServer the current session of this thread.
+     */
+    void attachToCurrentThread() {
+        SessionState.start(sessionState);
+    }
+
+    /**
+     * Releases the meta store connections held by this thread, leaving the HiveServer usable from other threads.
+     */
+    void detachFromCurrentThread() {
+        client.shutdown();
+        Hive.closeCurrent();
+    }
+
+    /**
+     * Merges the properties of a test case with the HiveConf of a HiveServer started for an earlier test case, e.g.
+     * taken from a pool or reset. Properties read when the HiveServer and its meta store are created can't be
+     * changed that way, see {@link #STARTUP_PROPERTY_PREFIXES}.
+     * @param testConfig Specific test case properties.
+     * @throws IllegalArgumentException if a property read at startup differs from the one of the HiveServer
+     */
+    public void mergeTestConfig(Map<String, String> testConfig) {
+        for (Map.Entry<String, String> property : testConfig.entrySet()) {
+            String key = property.getKey();
+            Preconditions.checkArgument(!isStartupProperty(key)
+                            || property.getValue().equals(startupConfig.getProperty(key)),
+                    "Property %s is read when the HiveServer starts and can't be changed on a HiveServer that is "
+                            + "pooled or reused between test methods", key);
+        }
+        applyTestConfig(testConfig);
+    }
+
+    private static boolean isStartupProperty(String key) {
+        for (String prefix : STARTUP_PROPERTY_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges test case properties with the HiveConf of an already started HiveServer.
+     * @param testConfig Specific test case properties.
+     */
+    public void applyTestConfig(Map<String, String> testConfig) {
+        HiveConf hiveConf = client.getHiveConf();
+        for (Map.Entry<String, String> property : testConfig.entrySet()) {
+            hiveConf.set(property.getKey(), property.getValue());
+        }
+    }
+
+
+    public HiveServerContext getContext() {
+        return context;
+    }
 
     public TemporaryFolder getBaseDir() {
         return context.getBaseDir();
@@ -86,49 +318,217 @@ import java.util.Map;
      * @return the result of the statement
      */
     public List<String> executeQuery(String hiveql) {
+        closeOpenCursor();
+        long start = beginStatement(hiveql);
+        try {
+            client.execute(hiveql);
+            List<String> rows = client.fetchAll();
+            lastRowsFetched = rows.size();
+            return rows;
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to executeQuery Hive query " + hiveql + ": " + e.getMessage(), e);
+        } finally {
+            statementFinished(hiveql, start);
+        }
+    }
+
+    /**
+     * Executes a single hql statement and parses the result according to its schema.
+     * @param hiveql to execute
+     * @return the rows of the result with one typed value per column, see {@link TypedRowParser}
+     */
+    public List<Object[]> executeQueryTyped(String hiveql) {
+        closeOpenCursor();
+        long start = beginStatement(hiveql);
         try {
             client.execute(hiveql);
-            return client.fetchAll();
+            TypedRowParser parser = new TypedRowParser(client.getSchema());
+            List<String> rows = client.fetchAll();
+            lastRowsFetched = rows.size();
+            List<Object[]> typedRows = new ArrayList<>(rows.size());
+            for (String row : rows) {
+                typedRows.add(parser.parse(row));
+            }
+            return typedRows;
         } catch (TException e) {
             throw new IllegalStateException("Failed to executeQuery Hive query " + hiveql + ": " + e.getMessage(), e);
+        } finally {
+            statementFinished(hiveql, start);
         }
     }
 
+    /**
+     * Executes a single hql statement without fetching its result.
+     * @param hiveql    to execute
+     * @param batchSize number of rows fetched from the HiveServer at a time
+     * @return cursor over the result of the statement, valid until the next statement is executed
+     */
+    public ResultCursor executeQueryStreaming(String hiveql, int batchSize) {
+        closeOpenCursor();
+        ResultCursor cursor = new ResultCursor(client, batchSize);
+        long start = beginStatement(hiveql);
+        try {
+            client.execute(hiveql);
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to executeQuery Hive query " + hiveql + ": " + e.getMessage(), e);
+        } finally {
+            statementFinished(hiveql, start);
+        }
+        openCursor = cursor;
+        return cursor;
+    }
+
     /**
      * Executes a hive script.
      * @param hiveql hive script statements.
      */
     public void executeScript(String hiveql) {
-        for (String statement : splitStatements(hiveql)) {
-            try {
-                client.execute(statement);
-            } catch (TException e) {
-                throw new IllegalStateException(
-                        "Failed to executeQuery Hive query " + statement + ": " + e.getMessage(), e);
+        closeOpenCursor();
+        for (String statement : ScriptCache.getInstance().split(hiveql)) {
+            executeStatement(statement);
+        }
+    }
+
+    /**
+     * Executes a hive script like {@link #executeScript(String)}, but runs independent DDL statements concurrently
+     * if the system property {@link ParallelStatementExecutor#THREADS_PROPERTY} is above 1.
+     * @param hiveql hive script statements.
+     */
+    public void executeScriptConcurrently(String hiveql) {
+        closeOpenCursor();
+        executeStatements(ScriptCache.getInstance().split(hiveql));
+    }
+
+    /**
+     * Executes a hive setup script like {@link #executeScriptConcurrently(String)}, but runs simple DDL statements
+     * directly in the meta store if the system property {@link MetaStoreDdl#ENABLED_PROPERTY} is true.
+     * @param hiveql hive script statements.
+     */
+    public void executeSetupScript(String hiveql) {
+        if (!MetaStoreDdl.isEnabled(client.getHiveConf())) {
+            executeScriptConcurrently(hiveql);
+            return;
+        }
+        closeOpenCursor();
+        new MetaStoreDdl(this).execute(ScriptCache.getInstance().split(hiveql));
+    }
+
+    /**
+     * Adds partitions to a table in one call to the meta store.
+     * @param partitionSpecs one map from partition column to value per partition
+     */
+    public void addPartitions(String databaseName, String tableName, List<Map<String, String>> partitionSpecs) {
+        closeOpenCursor();
+        MetaStoreDdl.addPartitions(this, databaseName, tableName, partitionSpecs, false);
+    }
+
+    /**
+     * Creates a builder writing rows straight into the files of the table.
+     */
+    public InsertIntoTable insertInto(String databaseName, String tableName) {
+        closeOpenCursor();
+        return new InsertIntoTable(this, databaseName, tableName);
+    }
+
+    /**
+     * Executes the statements one after another, or with independent statements running concurrently if
+     * {@link ParallelStatementExecutor#THREADS_PROPERTY} is above 1.
+     */
+    void executeStatements(List<String> statements) {
+        int threads = ParallelStatementExecutor.getConfiguredThreads(client.getHiveConf());
+        if (threads <= 1) {
+            for (String statement : statements) {
+                executeStatement(statement);
             }
+        } else {
+            new ParallelStatementExecutor(this, threads).execute(statements);
         }
+    }
 
+    void executeStatement(String statement) {
+        long start = beginStatement(statement);
+        try {
+            client.execute(statement);
+        } catch (TException e) {
+            throw new IllegalStateException(
+                    "Failed to executeQuery Hive query " + statement + ": " + e.getMessage(), e);
+        } finally {
+            statementFinished(statement, start);
+        }
     }
 
     /**
      * Release all resources.
      */
     public void tearDown() {
+        closeOpenCursor();
+        lastStatement = null;
+        long start = System.nanoTime();
         try {
             // Reset to default schema
             client.execute("USE default");
         } catch (Throwable e) {
             throw new IllegalStateException("Failed to reset to default schema: " + e.getMessage(), e);
         } finally {
+            HiveConf hiveConf = client.getHiveConf();
             client.shutdown();
             client = null;
+            shutdownMetaStore(hiveConf);
 
-            // Force reset of static field 'createDefaultDB' since Hive will not recreate the meta store otherwise.
-            ReflectionUtils.setStaticField(HiveMetaStore.HMSHandler.class, "createDefaultDB", false);
+            phaseListener.phaseFinished(PhaseListener.Phase.TEAR_DOWN, null, System.nanoTime() - start);
             LOGGER.info("Tore down HiveServer instance");
         }
     }
 
+    /**
+     * HSQLDB keeps each database in memory until it is shut down, including the read only file databases restored
+     * from snapshots, which have a path of their own per restore.
+     */
+    private static void shutdownMetaStore(HiveConf hiveConf) {
+        String url = hiveConf.getVar(HiveConf.ConfVars.METASTORECONNECTURLKEY);
+        if (!url.startsWith(HSQLDB_URL_PREFIX)) {
+            return;
+        }
+        try (Connection metaStore = DriverManager.getConnection(url,
+                hiveConf.getVar(HiveConf.ConfVars.METASTORE_CONNECTION_USER_NAME),
+                hiveConf.getVar(HiveConf.ConfVars.METASTOREPWD));
+             Statement statement = metaStore.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to shut down meta store " + url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resets the HiveServer to the state it had right after it was started, without shutting it down.
+     * <p/>
+     * All databases and tables are dropped, the HiveConf is restored and all files created in the
+     * sand box since start are removed.
+     */
+    public void reset() {
+        closeOpenCursor();
+        lastStatement = null;
+        long start = System.nanoTime();
+        try {
+            // Reset to default schema
+            client.execute("USE default");
+            dropAllTablesAndDatabases();
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to reset HiveServer: " + e.getMessage(), e);
+        }
+
+        restoreBaselineConfig();
+
+        try {
+            deleteNonBaselineFiles();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to clean test base dir: " + e.getMessage(), e);
+        }
+
+        phaseListener.phaseFinished(PhaseListener.Phase.TEAR_DOWN, "reset", System.nanoTime() - start);
+        LOGGER.info("Reset HiveServer instance");
+    }
+
     public String expandVariableSubstitutes(String expression) {
         return new VariableSubstitution().substitute(getClient().getHiveConf(), expression);
     }
@@ -137,7 +537,93 @@ import java.util.Map;
      * Package protected due to testability convenience.
      */
     String[] splitStatements(String hiveql) {
-        return hiveql.split("(?<=[^\\\\]);");
+        List<String> statements = StatementSplitter.split(hiveql);
+        return statements.toArray(new String[statements.size()]);
+    }
+
+    /**
+     * Profiles the last statement executed through this container. Must be called from the thread that executed
+     * the statement, and before any other statement is executed.
+     */
+    public QueryProfile getLastQueryProfile() {
+        Preconditions.checkState(lastStatement != null, "No statement was executed");
+
+        PerfLogger perfLogger = PerfLogger.getPerfLogger();
+        Long driverStart = perfLogger.getStartTime(PerfLogger.DRIVER_RUN);
+        // The PerfLogger and MapReduce stats are left as is by statements not run by the Driver
+        boolean driverRun = driverStart != null && driverStart >= lastStatementStartMillis;
+
+        List<String> stageTypes = new ArrayList<>();
+        Map<String, Long> counters = new TreeMap<>();
+        int mapReduceJobs = 0;
+        if (driverRun) {
+            try {
+                List<Query> queries = client.getQueryPlan().getQueries();
+                for (Query query : queries == null ? Collections.<Query>emptyList() : queries) {
+                    if (query.getStageList() != null) {
+                        for (Stage stage : query.getStageList()) {
+                            stageTypes.add(String.valueOf(stage.getStageType()));
+                        }
+                    }
+                }
+            } catch (TException e) {
+                throw new IllegalStateException("Failed to get query plan: " + e.getMessage(), e);
+            }
+
+            List<MapRedStats> jobs = sessionState.getLastMapRedStatsList();
+            if (jobs != null) {
+                mapReduceJobs = jobs.size();
+                for (MapRedStats job : jobs) {
+                    addCounters(counters, job.getCounters());
+                }
+            }
+        }
+
+        return new QueryProfile(lastStatement, TimeUnit.NANOSECONDS.toMillis(lastStatementNanos),
+                driverRun ? elapsedMillis(perfLogger, PerfLogger.COMPILE) : 0,
+                driverRun ? elapsedMillis(perfLogger, PerfLogger.DRIVER_EXECUTE) : 0,
+                stageTypes, mapReduceJobs, counters, lastRowsFetched);
+    }
+
+    private static long elapsedMillis(PerfLogger perfLogger, String method) {
+        Long start = perfLogger.getStartTime(method);
+        Long end = perfLogger.getEndTime(method);
+        return start == null || end == null || end < start ? 0 : end - start;
+    }
+
+    private static void addCounters(Map<String, Long> sums, Counters counters) {
+        if (counters == null) {
+            return;
+        }
+        for (Counters.Group group : counters) {
+            for (Counters.Counter counter : group) {
+                String name = group.getName() + "." + counter.getName();
+                Long sum = sums.get(name);
+                sums.put(name, sum == null ? counter.getValue() : sum + counter.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the start time of the statement to pass to {@link #statementFinished(String, long)}
+     */
+    private long beginStatement(String statement) {
+        lastStatement = statement;
+        lastStatementStartMillis = System.currentTimeMillis();
+        lastRowsFetched = -1;
+        return System.nanoTime();
+    }
+
+    private void statementFinished(String statement, long start) {
+        lastStatementNanos = System.nanoTime() - start;
+        phaseListener.phaseFinished(PhaseListener.Phase.STATEMENT, statement, lastStatementNanos);
+    }
+
+    private void closeOpenCursor() {
+        if (openCursor != null) {
+            openCursor.close();
+            openCursor = null;
+        }
     }
 
     private void pingHiveServer() {
@@ -150,6 +636,94 @@ import java.util.Map;
         }
     }
 
+    private void captureBaseline(Map<String, String> testConfig, Properties contextConfig) {
+        baselineConfig = client.getHiveConf().getAllProperties();
+
+        // Test case properties belongs to the test method and should not survive a reset
+        for (String key : testConfig.keySet()) {
+            if (contextConfig.containsKey(key)) {
+                baselineConfig.setProperty(key, contextConfig.getProperty(key));
+            } else {
+                baselineConfig.remove(key);
+            }
+        }
+
+        try {
+            baselineFiles = listFiles(getBaseDir().getRoot().toPath());
+            baselineMemoryFiles = InMemoryFileSystem.listTree(getBaseDir().getRoot().getAbsolutePath());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to list test base dir: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drops tables through the meta store api rather than through hive ql to avoid compiling a query per table.
+     */
+    private void dropAllTablesAndDatabases() throws TException {
+        for (String database : client.get_all_databases()) {
+            for (String table : client.get_all_tables(database)) {
+                client.drop_table(database, table, true);
+            }
+            if (!MetaStoreUtils.DEFAULT_DATABASE_NAME.equals(database)) {
+                client.drop_database(database, true, false);
+            }
+        }
+    }
+
+    private void restoreBaselineConfig() {
+        HiveConf hiveConf = client.getHiveConf();
+        for (String key : hiveConf.getAllProperties().stringPropertyNames()) {
+            if (!baselineConfig.containsKey(key)) {
+                hiveConf.unset(key);
+            }
+        }
+        for (String key : baselineConfig.stringPropertyNames()) {
+            hiveConf.set(key, baselineConfig.getProperty(key));
+        }
+    }
+
+    private Set<Path> listFiles(Path root) throws IOException {
+        final Set<Path> files = new HashSet<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                files.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private void deleteNonBaselineFiles() throws IOException {
+        InMemoryFileSystem.retainTree(getBaseDir().getRoot().getAbsolutePath(), baselineMemoryFiles);
+        Files.walkFileTree(getBaseDir().getRoot().toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!baselineFiles.contains(file)) {
+                    Files.delete(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                if (!baselineFiles.contains(dir)) {
+                    Files.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
 
 }
 
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps a number of started HiveServers, each with its own sand box and meta store, warmed in a background thread.
+ * <p/>
+ * A HiveServer taken from the pool is torn down as usual after the test method. The tear down also deletes its
+ * sand box and starts a replacement in the background, so that the startup cost is hidden as long as test
+ * methods run back to back in the same JVM.
+ */
+class HiveServerPool {
+
+    /**
+     * System property controlling the number of HiveServers kept warm by each pool.
+     */
+    static final String POOL_SIZE_PROPERTY = "hiverunner.pool.size";
+
+    static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HiveServerPool.class);
+
+    /**
+     * Creates the context of each pooled HiveServer.
+     */
+    interface ContextFactory {
+        HiveServerContext create(TemporaryFolder basedir);
+    }
+
+    private final ContextFactory contextFactory;
+
+    private final BlockingQueue<Future<HiveServerContainer>> servers = new LinkedBlockingQueue<>();
+
+    /**
+     * Single threaded since Hive does not support starting several HiveServers concurrently.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hiverunner-server-pool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    HiveServerPool(int size, ContextFactory contextFactory) {
+        Preconditions.checkArgument(size > 0, "Pool size should be positive but was %s", size);
+        this.contextFactory = contextFactory;
+        for (int i = 0; i < size; i++) {
+            replenish();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    static int getConfiguredSize() {
+        return Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Takes a started HiveServer from the pool, waiting for one to be warmed if needed. The HiveServer session is
+     * attached to the calling thread.
+     */
+    HiveServerContainer take() {
+        Future<HiveServerContainer> server;
+        try {
+            server = servers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a pooled HiveServer", e);
+        }
+
+        try {
+            HiveServerContainer container = server.get();
+            container.attachToCurrentThread();
+            return container;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a pooled HiveServer", e);
+        } catch (ExecutionException e) {
+            // The failed server will never be released, so start its replacement right away.
+            replenish();
+            throw new IllegalStateException("Failed to start pooled HiveServer: " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private void replenish() {
+        servers.add(executor.submit(new Callable<HiveServerContainer>() {
+            @Override
+            public HiveServerContainer call() throws Exception {
+                return warmUp();
+            }
+        }));
+    }
+
+    private HiveServerContainer warmUp() throws IOException {
+        final TemporaryFolder basedir = SandboxPool.getInstance().newTemporaryFolder();
+        basedir.create();
+
+        HiveServerContainer container = new HiveServerContainer() {
+            @Override
+            public void tearDown() {
+                try {
+                    super.tearDown();
+                } finally {
+                    basedir.delete();
+                    replenish();
+                }
+            }
+        };
+
+        try {
+            container.init(Collections.<String, String>emptyMap(), contextFactory.create(basedir));
+            container.detachFromCurrentThread();
+        } catch (RuntimeException e) {
+            basedir.delete();
+            throw e;
+        }
+
+        LOGGER.info("Warmed pooled HiveServer instance in " + basedir.getRoot());
+        return container;
+    }
+
+    /**
+     * Stops warming HiveServers and deletes the sand boxes of the ones that were never taken.
+     */
+    void close() {
+        executor.shutdownNow();
+        Future<HiveServerContainer> server;
+        while ((server = servers.poll()) != null) {
+            if (server.isDone() && !server.isCancelled()) {
+                try {
+                    server.get().getBaseDir().delete();
+                } catch (InterruptedException | ExecutionException e) {
+                    // Nothing to clean up
+                }
+            }
+        }
+    }
+}
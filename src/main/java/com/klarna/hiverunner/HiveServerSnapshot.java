@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Charsets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Snapshot of a started HiveServer, stored in a directory.
+ * <p/>
+ * The snapshot holds a HSQLDB script of the meta store, a copy of the test sand box, including its part in the
+ * {@link InMemoryFileSystem}, and the session state.
+ * All paths into the original sand box are rewritten to the new sand box when the snapshot is restored.
+ */
+public class HiveServerSnapshot {
+
+    private static final String META_STORE_SCRIPT = "metastore.script";
+    private static final String FILES_DIR = "files";
+    private static final String MEMORY_FILES_DIR = "memory_files";
+    private static final String SESSION_FILE = "session.properties";
+
+    private static final String BASE_DIR_KEY = "basedir";
+    private static final String DATABASE_KEY = "database";
+    private static final String SETUP_MILLIS_KEY = "setup.millis";
+    private static final String CONFIG_PREFIX = "config.";
+    private static final String VARIABLE_PREFIX = "variable.";
+
+    /**
+     * Directory in the new sand box holding the restored meta store.
+     */
+    private static final String RESTORED_META_STORE_DIR = "snapshot_metastore";
+
+    private final Path directory;
+
+    private final Properties session;
+
+    private HiveServerSnapshot(Path directory, Properties session) {
+        this.directory = directory;
+        this.session = session;
+    }
+
+    /**
+     * Opens a snapshot previously captured to the given directory.
+     */
+    static HiveServerSnapshot open(Path directory) throws IOException {
+        Properties session = new Properties();
+        try (InputStream in = Files.newInputStream(directory.resolve(SESSION_FILE))) {
+            session.load(in);
+        }
+        return new HiveServerSnapshot(directory, session);
+    }
+
+    /**
+     * Captures the meta store, the sand box and the session state into the given directory.
+     * @param metaStore Connection to the HSQLDB meta store
+     * @param baseDir   The sand box of the HiveServer
+     * @param database  The current database of the session
+     * @param config    HiveConf properties changed by the setup
+     * @param variables Hive variables of the session
+     * @param setupMillis Time it took to start and set up the HiveServer
+     */
+    static HiveServerSnapshot capture(Path directory, Connection metaStore, Path baseDir, String database,
+                                      Map<String, String> config, Map<String, String> variables,
+                                      long setupMillis) throws IOException, SQLException {
+        Files.createDirectories(directory);
+
+        try (Statement statement = metaStore.createStatement()) {
+            statement.execute("SCRIPT '" + directory.resolve(META_STORE_SCRIPT) + "'");
+        }
+
+        copyTree(baseDir, directory.resolve(FILES_DIR));
+        InMemoryFileSystem.exportTree(baseDir.toString(), directory.resolve(MEMORY_FILES_DIR));
+
+        Properties session = new Properties();
+        session.setProperty(BASE_DIR_KEY, baseDir.toString());
+        session.setProperty(DATABASE_KEY, database);
+        session.setProperty(SETUP_MILLIS_KEY, Long.toString(setupMillis));
+        for (Map.Entry<String, String> property : config.entrySet()) {
+            session.setProperty(CONFIG_PREFIX + property.getKey(), property.getValue());
+        }
+        for (Map.Entry<String, String> variable : variables.entrySet()) {
+            session.setProperty(VARIABLE_PREFIX + variable.getKey(), variable.getValue());
+        }
+        try (OutputStream out = Files.newOutputStream(directory.resolve(SESSION_FILE))) {
+            session.store(out, "HiveRunner setup snapshot");
+        }
+
+        return new HiveServerSnapshot(directory, session);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Copies the sand box of the snapshot into the given sand box.
+     */
+    void restoreFiles(Path baseDir) throws IOException {
+        copyTree(directory.resolve(FILES_DIR), baseDir);
+        if (Files.isDirectory(directory.resolve(MEMORY_FILES_DIR))) {
+            InMemoryFileSystem.importTree(directory.resolve(MEMORY_FILES_DIR), baseDir.toString());
+        }
+    }
+
+    /**
+     * Writes the meta store of the snapshot into the given sand box.
+     * @return The jdbc url of the restored meta store. Changes to it are kept in memory only.
+     */
+    String restoreMetaStore(Path baseDir) throws IOException {
+        // HSQLDB scripts are plain ascii with unicode escapes
+        String script = new String(Files.readAllBytes(directory.resolve(META_STORE_SCRIPT)), Charsets.ISO_8859_1);
+
+        // HSQLDB keeps file databases open per path until shut down, and sand boxes are recycled
+        Path metaStoreDir = Files.createTempDirectory(baseDir, RESTORED_META_STORE_DIR);
+        Files.write(metaStoreDir.resolve(META_STORE_SCRIPT),
+                rewritePaths(script, baseDir).getBytes(Charsets.ISO_8859_1));
+
+        return "jdbc:hsqldb:file:" + metaStoreDir.resolve("metastore") + ";files_readonly=true";
+    }
+
+    /**
+     * @return The time it took to start and set up the HiveServer of the snapshot.
+     */
+    public long getSetupMillis() {
+        return Long.parseLong(session.getProperty(SETUP_MILLIS_KEY, "0"));
+    }
+
+    String getDatabase() {
+        return session.getProperty(DATABASE_KEY);
+    }
+
+    Map<String, String> getConfig(Path baseDir) {
+        return getPrefixed(CONFIG_PREFIX, baseDir);
+    }
+
+    Map<String, String> getVariables(Path baseDir) {
+        return getPrefixed(VARIABLE_PREFIX, baseDir);
+    }
+
+    private Map<String, String> getPrefixed(String prefix, Path baseDir) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : session.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                values.put(key.substring(prefix.length()), rewritePaths(session.getProperty(key), baseDir));
+            }
+        }
+        return values;
+    }
+
+    private String rewritePaths(String value, Path baseDir) {
+        return value.replace(session.getProperty(BASE_DIR_KEY), baseDir.toString());
+    }
+
+    private static void copyTree(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
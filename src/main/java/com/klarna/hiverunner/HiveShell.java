@@ -25,6 +25,7 @@ import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -41,6 +42,19 @@ public interface HiveShell {
      */
     List<String> executeQuery(String script);
 
+    /**
+     * Executes a single query and returns its rows with one value per column, typed after the result schema.
+     * Numbers, booleans, decimals, dates and timestamps are parsed into their Java types, other columns are kept
+     * as strings and NULL is returned as null.
+     * <p/>
+     * Since the HiveServer returns rows as tab separated text, some values can't be told apart: NULL in a string,
+     * varchar, binary or complex column is returned as the string "NULL", and if several string columns of a row
+     * contain tabs, all of the extra fields end up in the first string column.
+     * <p/>
+     * May only be called post #start()
+     */
+    List<Object[]> executeQueryTyped(String hql);
+
     /**
      * Executes a hive script. The script may contain multiple statements delimited by ';'
      * <p/>
@@ -48,6 +62,56 @@ public interface HiveShell {
      */
     void execute(String script);
 
+    /**
+     * Executes a single query and streams its result row by row instead of holding it in memory.
+     * The cursor is only valid until the next statement is executed and is closed when the shell is torn down.
+     * <p/>
+     * May only be called post #start()
+     */
+    ResultCursor executeQueryStreaming(String hql);
+
+    /**
+     * Like {@link #executeQueryStreaming(String)} but fetching the given number of rows from the HiveServer at a
+     * time.
+     */
+    ResultCursor executeQueryStreaming(String hql, int batchSize);
+
+    /**
+     * Profiles the last statement executed through this shell, e.g. to assert that a query does not launch more
+     * than one MapReduce job. For scripts this is the last statement of the script.
+     * <p/>
+     * May only be called post #start() and after a statement was executed
+     */
+    QueryProfile getLastQueryProfile();
+
+    /**
+     * Explains a single query and returns its plan, e.g. to assert that a join is done map side or to compare the
+     * plan with a golden file using {@link PlanAssert}.
+     * <p/>
+     * May only be called post #start()
+     */
+    ExplainPlan explain(String hql);
+
+    /**
+     * Adds partitions to a table in one call to the meta store, bypassing the query
+     * compiler. This is a lot faster than an ALTER TABLE ... ADD PARTITION statement per partition. Partitions get
+     * the default location below the table location, where their directories are created.
+     * <p/>
+     * May only be called post #start()
+     *
+     * @param partitionSpecs one map from partition column to value per partition
+     */
+    void addPartitions(String databaseName, String tableName, List<Map<String, String>> partitionSpecs);
+
+    /**
+     * Creates a builder that writes rows straight into the directory of the table or its partitions, in the storage
+     * format of the table. This avoids the MapReduce job of an INSERT ... SELECT statement. Rows are written on
+     * {@link InsertIntoTable#commit()}.
+     * <p/>
+     * May only be called post #start()
+     */
+    InsertIntoTable insertInto(String databaseName, String tableName);
+
     /**
      * Direct access to hive client.
      * <p/>
@@ -169,6 +233,10 @@ public interface HiveShell {
      * May only be called pre #start()
      * No writes to the stream will be allowed post #start()
      *
+     * The stream is buffered. Data beyond the number of bytes set by the system property
+     * <code>hiverunner.resource.spill.threshold</code> (default 16 MB) is spilled to a temporary file in the test
+     * sand box instead of being kept in memory.
+     *
      * @param targetFile The path to the target file relative to the hive work space
      */
     OutputStream getResourceOutputStream(String targetFile);
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
+
+/**
+ * Standalone context keeping the warehouse, the scratch dir and hadoop.tmp.dir in an {@link InMemoryFileSystem}.
+ * Tables, resources written to these directories and the output of queries never touch the disk.
+ * <p/>
+ * The in memory directories have the same paths as their counterparts in the sand box, e.g.
+ * <code>mem:///tmp/.../warehouse</code>, and are deleted with the sand box. The local file system is still used for
+ * the meta store and the local scratch dir, where Hive puts the plans and intermediate output of MapReduce jobs
+ * running within this JVM, and for the job files and map outputs of MapReduce itself.
+ */
+class InMemoryContext extends StandaloneHiveServerContext {
+
+    InMemoryContext(TemporaryFolder basedir) {
+        super(basedir);
+    }
+
+    @Override
+    protected void configureFileSystem(TemporaryFolder basedir, HiveConf conf) {
+        super.configureFileSystem(basedir, conf);
+
+        conf.setClass("fs." + InMemoryFileSystem.SCHEME + ".impl", InMemoryFileSystem.class, FileSystem.class);
+
+        // The defaults of these are derived from hadoop.tmp.dir but have to stay on the local file system
+        String localTmpDir = conf.get("hadoop.tmp.dir");
+        setLocalDir(conf, localTmpDir + "/mapred/local", "mapreduce.cluster.local.dir", "mapred.local.dir");
+        setLocalDir(conf, localTmpDir + "/mapred/system", "mapreduce.jobtracker.system.dir", "mapred.system.dir");
+        setLocalDir(conf, localTmpDir + "/mapred/staging", "mapreduce.jobtracker.staging.root.dir");
+        setLocalDir(conf, localTmpDir + "/mapred/temp", "mapreduce.cluster.temp.dir", "mapred.temp.dir");
+        setLocalDir(conf, localTmpDir + "/io/local", "io.seqfile.local.dir");
+
+        moveToMemory(conf, METASTOREWAREHOUSE.varname);
+        moveToMemory(conf, SCRATCHDIR.varname);
+        moveToMemory(conf, "hadoop.tmp.dir");
+    }
+
+    private void setLocalDir(HiveConf conf, String dir, String... keys) {
+        for (String key : keys) {
+            conf.set(key, dir);
+        }
+    }
+
+    private void moveToMemory(HiveConf conf, String key) {
+        Path dir = new Path(InMemoryFileSystem.SCHEME, null, conf.get(key));
+        try {
+            dir.getFileSystem(conf).mkdirs(dir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create in memory dir: " + e.getMessage(), e);
+        }
+        conf.set(key, dir.toString());
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.ParentNotDirectoryException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Hadoop file system keeping all files in the heap of this JVM, registered under the scheme
+ * <code>mem</code>, e.g. <code>mem:///tmp/warehouse</code>.
+ * <p/>
+ * All instances share the same files, so that the HiveServer, the meta store and the MapReduce jobs running within
+ * this JVM see the same. Files are visible, though empty, as soon as they are created and get their content when
+ * closed. Appends and symlinks are not supported.
+ */
+public class InMemoryFileSystem extends FileSystem {
+
+    public static final String SCHEME = "mem";
+
+    private static final URI ROOT_URI = URI.create(SCHEME + ":///");
+
+    private static final String ROOT = "/";
+
+    /**
+     * All files and directories by absolute path. Guarded by itself.
+     */
+    private static final NavigableMap<String, Node> NODES = new TreeMap<>();
+
+    static {
+        NODES.put(ROOT, Node.directory(FsPermission.getDirDefault()));
+    }
+
+    private Path workingDirectory = new Path(ROOT_URI);
+
+    @Override
+    public void initialize(URI name, Configuration conf) throws IOException {
+        super.initialize(name, conf);
+        setConf(conf);
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public URI getUri() {
+        return ROOT_URI;
+    }
+
+    @Override
+    public FSDataInputStream open(Path path, int bufferSize) throws IOException {
+        Node node = getNode(path);
+        if (node.isDirectory()) {
+            throw new FileNotFoundException(path + " is a directory");
+        }
+        return new FSDataInputStream(new NodeInputStream(node.getData()));
+    }
+
+    @Override
+    public FSDataOutputStream create(Path path, FsPermission permission, boolean overwrite, int bufferSize,
+                                     short replication, long blockSize, Progressable progress) throws IOException {
+        String key = toKey(path);
+        synchronized (NODES) {
+            Node existing = NODES.get(key);
+            if (existing != null) {
+                if (existing.isDirectory()) {
+                    throw new FileAlreadyExistsException(path + " is a directory");
+                }
+                if (!overwrite) {
+                    throw new FileAlreadyExistsException(path + " already exists");
+                }
+            }
+            mkdirs(parentOf(key), FsPermission.getDirDefault());
+            final Node node = Node.file(permission);
+            NODES.put(key, node);
+            return new FSDataOutputStream(new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    node.setData(toByteArray());
+                }
+            }, statistics);
+        }
+    }
+
+    @Override
+    public FSDataOutputStream append(Path path, int bufferSize, Progressable progress) throws IOException {
+        throw new IOException("Append is not supported by " + getClass().getSimpleName());
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        String from = toKey(src);
+        String to = toKey(dst);
+        synchronized (NODES) {
+            if (!NODES.containsKey(from) || from.equals(ROOT)) {
+                return false;
+            }
+            Node target = NODES.get(to);
+            if (target != null && target.isDirectory()) {
+                to = childOf(to, nameOf(from));
+                target = NODES.get(to);
+            }
+            if (from.equals(to)) {
+                return true;
+            }
+            Node parent = NODES.get(parentOf(to));
+            if (target != null || parent == null || !parent.isDirectory() || isAncestor(from, to)) {
+                return false;
+            }
+            Map<String, Node> moved = subTree(from);
+            for (String key : moved.keySet()) {
+                NODES.remove(key);
+            }
+            for (Map.Entry<String, Node> node : moved.entrySet()) {
+                NODES.put(to + node.getKey().substring(from.length()), node.getValue());
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean delete(Path path, boolean recursive) throws IOException {
+        String key = toKey(path);
+        synchronized (NODES) {
+            if (!NODES.containsKey(key)) {
+                return false;
+            }
+            Map<String, Node> tree = subTree(key);
+            if (tree.size() > 1 && !recursive) {
+                throw new IOException("Directory " + path + " is not empty");
+            }
+            deleteTree(key);
+            return true;
+        }
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path path) throws IOException {
+        String key = toKey(path);
+        List<FileStatus> statuses = new ArrayList<>();
+        synchronized (NODES) {
+            Node node = getNode(path);
+            if (!node.isDirectory()) {
+                return new FileStatus[]{toStatus(key, node)};
+            }
+            for (Map.Entry<String, Node> child : subTree(key).entrySet()) {
+                if (!child.getKey().equals(key) && parentOf(child.getKey()).equals(key)) {
+                    statuses.add(toStatus(child.getKey(), child.getValue()));
+                }
+            }
+        }
+        return statuses.toArray(new FileStatus[statuses.size()]);
+    }
+
+    @Override
+    public void setWorkingDirectory(Path path) {
+        workingDirectory = makeQualified(path);
+    }
+
+    @Override
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    @Override
+    public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+        mkdirs(toKey(path), permission);
+        return true;
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path path) throws IOException {
+        return toStatus(toKey(path), getNode(path));
+    }
+
+    @Override
+    public void setPermission(Path path, FsPermission permission) throws IOException {
+        getNode(path).setPermission(permission);
+    }
+
+    @Override
+    public void setOwner(Path path, String username, String groupname) throws IOException {
+        getNode(path).setOwner(username, groupname);
+    }
+
+    @Override
+    public void setTimes(Path path, long mtime, long atime) throws IOException {
+        Node node = getNode(path);
+        if (mtime >= 0) {
+            node.setModificationTime(mtime);
+        }
+    }
+
+    private void mkdirs(String key, FsPermission permission) throws IOException {
+        synchronized (NODES) {
+            Node node = NODES.get(key);
+            if (node != null) {
+                if (!node.isDirectory()) {
+                    throw new ParentNotDirectoryException(key + " is not a directory");
+                }
+                return;
+            }
+            mkdirs(parentOf(key), permission);
+            NODES.put(key, Node.directory(permission));
+        }
+    }
+
+    private Node getNode(Path path) throws FileNotFoundException {
+        Node node;
+        synchronized (NODES) {
+            node = NODES.get(toKey(path));
+        }
+        if (node == null) {
+            throw new FileNotFoundException("File " + path + " does not exist");
+        }
+        return node;
+    }
+
+    private FileStatus toStatus(String key, Node node) {
+        Path path = new Path(SCHEME, null, key);
+        return new FileStatus(node.getLength(), node.isDirectory(), 1, getDefaultBlockSize(path),
+                node.getModificationTime(), 0, node.getPermission(), node.getOwner(), node.getGroup(), path);
+    }
+
+    private String toKey(Path path) {
+        checkPath(path);
+        String key = makeQualified(path).toUri().getPath();
+        return key.length() > 1 && key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+    }
+
+    /**
+     * Lists the files and directories below the given absolute path, e.g. to restore them later by
+     * {@link #retainTree(String, Set)}.
+     */
+    static Set<String> listTree(String root) {
+        synchronized (NODES) {
+            return new HashSet<>(subTree(root).keySet());
+        }
+    }
+
+    /**
+     * Deletes all files and directories below the given absolute path that are not in the given set.
+     */
+    static void retainTree(String root, Set<String> retained) {
+        synchronized (NODES) {
+            for (String key : subTree(root).keySet()) {
+                if (!retained.contains(key) && !key.equals(ROOT)) {
+                    NODES.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the given absolute path and all below it.
+     */
+    static void deleteTree(String root) {
+        synchronized (NODES) {
+            for (String key : subTree(root).keySet()) {
+                if (!key.equals(ROOT)) {
+                    NODES.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies all files and directories below the given absolute path to the local directory.
+     */
+    static void exportTree(String root, java.nio.file.Path target) throws IOException {
+        Map<String, Node> tree;
+        synchronized (NODES) {
+            tree = subTree(root);
+        }
+        for (Map.Entry<String, Node> node : tree.entrySet()) {
+            java.nio.file.Path file = target.resolve("." + node.getKey().substring(root.length())).normalize();
+            if (node.getValue().isDirectory()) {
+                Files.createDirectories(file);
+            } else {
+                Files.createDirectories(file.getParent());
+                Files.write(file, node.getValue().getData());
+            }
+        }
+    }
+
+    /**
+     * Copies all files and directories below the local directory to the given absolute path.
+     */
+    static void importTree(final java.nio.file.Path source, final String root) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<java.nio.file.Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(java.nio.file.Path dir, BasicFileAttributes attrs) {
+                synchronized (NODES) {
+                    String key = toKey(root, source.relativize(dir));
+                    if (!NODES.containsKey(key)) {
+                        NODES.put(key, Node.directory(FsPermission.getDirDefault()));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(java.nio.file.Path file, BasicFileAttributes attrs) throws IOException {
+                Node node = Node.file(FsPermission.getFileDefault());
+                node.setData(Files.readAllBytes(file));
+                synchronized (NODES) {
+                    NODES.put(toKey(root, source.relativize(file)), node);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String toKey(String root, java.nio.file.Path relative) {
+        String path = relative.toString().replace('\\', '/');
+        return path.isEmpty() ? root : childOf(root, path);
+    }
+
+    /**
+     * Copy of the node at the given key and all nodes below it. Caller must hold the lock.
+     */
+    private static NavigableMap<String, Node> subTree(String key) {
+        if (key.equals(ROOT)) {
+            return new TreeMap<>(NODES);
+        }
+        NavigableMap<String, Node> tree = new TreeMap<>();
+        Node node = NODES.get(key);
+        if (node != null) {
+            tree.put(key, node);
+            // '0' follows '/', so this is everything below key
+            tree.putAll(NODES.subMap(key + "/", true, key + "0", false));
+        }
+        return tree;
+    }
+
+    private static boolean isAncestor(String ancestor, String key) {
+        return ancestor.equals(ROOT) || key.startsWith(ancestor + "/");
+    }
+
+    private static String parentOf(String key) {
+        int slash = key.lastIndexOf('/');
+        return slash <= 0 ? ROOT : key.substring(0, slash);
+    }
+
+    private static String nameOf(String key) {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    private static String childOf(String key, String name) {
+        return key.equals(ROOT) ? ROOT + name : key + "/" + name;
+    }
+
+    private static final class Node {
+
+        private final boolean directory;
+        private volatile byte[] data = new byte[0];
+        private volatile long modificationTime = System.currentTimeMillis();
+        private volatile FsPermission permission;
+        private volatile String owner = System.getProperty("user.name");
+        private volatile String group = "supergroup";
+
+        private Node(boolean directory, FsPermission permission) {
+            this.directory = directory;
+            this.permission = permission == null ?
+                    (directory ? FsPermission.getDirDefault() : FsPermission.getFileDefault()) : permission;
+        }
+
+        static Node directory(FsPermission permission) {
+            return new Node(true, permission);
+        }
+
+        static Node file(FsPermission permission) {
+            return new Node(false, permission);
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        void setData(byte[] data) {
+            this.data = data;
+            this.modificationTime = System.currentTimeMillis();
+        }
+
+        long getLength() {
+            return directory ? 0 : data.length;
+        }
+
+        long getModificationTime() {
+            return modificationTime;
+        }
+
+        void setModificationTime(long modificationTime) {
+            this.modificationTime = modificationTime;
+        }
+
+        FsPermission getPermission() {
+            return permission;
+        }
+
+        void setPermission(FsPermission permission) {
+            this.permission = permission;
+        }
+
+        String getOwner() {
+            return owner;
+        }
+
+        String getGroup() {
+            return group;
+        }
+
+        void setOwner(String owner, String group) {
+            if (owner != null) {
+                this.owner = owner;
+            }
+            if (group != null) {
+                this.group = group;
+            }
+        }
+    }
+
+    private static final class NodeInputStream extends FSInputStream {
+
+        private final byte[] data;
+        private int position = 0;
+
+        NodeInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            if (pos < 0 || pos > data.length) {
+                throw new EOFException("Cannot seek to " + pos + " in file of length " + data.length);
+            }
+            position = (int) pos;
+        }
+
+        @Override
+        public long getPos() {
+            return position;
+        }
+
+        @Override
+        public boolean seekToNewSource(long targetPos) {
+            return false;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int read = Math.min(length, data.length - position);
+            System.arraycopy(data, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return data.length - position;
+        }
+    }
+}
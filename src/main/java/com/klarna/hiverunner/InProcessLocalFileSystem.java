@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Local file system for HiveServers running within this JVM.
+ * <p/>
+ * Without the Hadoop native library the local file system forks a chmod, ls or readlink process for every
+ * permission change and every permission, owner or link lookup, which adds up to hundreds of processes per
+ * MapReduce job. This file system does the same through java.nio instead. Checksum files are neither written
+ * nor verified.
+ * <p/>
+ * Falls back to the Hadoop implementation on file systems without POSIX attributes.
+ */
+public final class InProcessLocalFileSystem extends LocalFileSystem {
+
+    public InProcessLocalFileSystem() {
+        super(new NoForkRawLocalFileSystem());
+    }
+
+    @Override
+    public void initialize(URI name, Configuration conf) throws IOException {
+        super.initialize(name, conf);
+        setWriteChecksum(false);
+        setVerifyChecksum(false);
+    }
+
+    static final class NoForkRawLocalFileSystem extends RawLocalFileSystem {
+
+        private static final boolean POSIX =
+                FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+        @Override
+        public FileStatus getFileStatus(Path path) throws IOException {
+            if (!POSIX) {
+                return super.getFileStatus(path);
+            }
+            return getStatus(path, true);
+        }
+
+        @Override
+        public FileStatus getFileLinkStatus(Path path) throws IOException {
+            if (!POSIX) {
+                return super.getFileLinkStatus(path);
+            }
+            return getStatus(path, false);
+        }
+
+        @Override
+        public FileStatus[] listStatus(Path path) throws IOException {
+            if (!POSIX) {
+                return super.listStatus(path);
+            }
+            File file = pathToFile(path);
+            if (!file.isDirectory()) {
+                return new FileStatus[]{getFileStatus(path)};
+            }
+            String[] names = file.list();
+            if (names == null) {
+                return null;
+            }
+            List<FileStatus> statuses = new ArrayList<>(names.length);
+            for (String name : names) {
+                try {
+                    statuses.add(getFileStatus(new Path(path, name)));
+                } catch (FileNotFoundException e) {
+                    // Deleted while listing
+                }
+            }
+            return statuses.toArray(new FileStatus[statuses.size()]);
+        }
+
+        @Override
+        public Path getLinkTarget(Path path) throws IOException {
+            if (!POSIX) {
+                return super.getLinkTarget(path);
+            }
+            return new Path(Files.readSymbolicLink(pathToFile(path).toPath()).toString());
+        }
+
+        @Override
+        public void setPermission(Path path, FsPermission permission) throws IOException {
+            if (!POSIX) {
+                super.setPermission(path, permission);
+                return;
+            }
+            try {
+                Files.setPosixFilePermissions(pathToFile(path).toPath(), toPosixPermissions(permission));
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException("File " + path + " does not exist");
+            }
+        }
+
+        @Override
+        public void setOwner(Path path, String username, String groupname) throws IOException {
+            if (!POSIX) {
+                super.setOwner(path, username, groupname);
+                return;
+            }
+            java.nio.file.Path file = pathToFile(path).toPath();
+            UserPrincipalLookupService lookupService = file.getFileSystem().getUserPrincipalLookupService();
+            PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+            if (username != null) {
+                view.setOwner(lookupService.lookupPrincipalByName(username));
+            }
+            if (groupname != null) {
+                view.setGroup(lookupService.lookupPrincipalByGroupName(groupname));
+            }
+        }
+
+        private FileStatus getStatus(Path path, boolean followLinks) throws IOException {
+            File file = pathToFile(path);
+            PosixFileAttributes attributes;
+            try {
+                attributes = followLinks ?
+                        Files.readAttributes(file.toPath(), PosixFileAttributes.class) :
+                        Files.readAttributes(file.toPath(), PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException("File " + path + " does not exist");
+            }
+            Path qualified = new Path(file.getPath()).makeQualified(getUri(), getWorkingDirectory());
+            Path symlink = attributes.isSymbolicLink() ?
+                    new Path(Files.readSymbolicLink(file.toPath()).toString()) : null;
+            return new FileStatus(attributes.size(), attributes.isDirectory(), 1, getDefaultBlockSize(path),
+                    attributes.lastModifiedTime().toMillis(), attributes.lastAccessTime().toMillis(),
+                    toFsPermission(attributes.permissions()), attributes.owner().getName(),
+                    attributes.group().getName(), symlink, qualified);
+        }
+
+        private static Set<PosixFilePermission> toPosixPermissions(FsPermission permission) {
+            Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+            // PosixFilePermission is ordered as owner, group, others and read, write, execute
+            PosixFilePermission[] values = PosixFilePermission.values();
+            int mode = permission.toShort();
+            for (int i = 0; i < values.length; i++) {
+                if ((mode & (1 << (values.length - 1 - i))) != 0) {
+                    permissions.add(values[i]);
+                }
+            }
+            return permissions;
+        }
+
+        private static FsPermission toFsPermission(Set<PosixFilePermission> permissions) {
+            PosixFilePermission[] values = PosixFilePermission.values();
+            int mode = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (permissions.contains(values[i])) {
+                    mode |= 1 << (values.length - 1 - i);
+                }
+            }
+            return new FsPermission((short) mode);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.ql.DriverContext;
+import org.apache.hadoop.hive.ql.exec.mr.MapredLocalTask;
+
+/**
+ * Local task that builds the hash tables of a map join within this JVM.
+ * <p/>
+ * Hive always runs MapredLocalTask in a child JVM launched through the hadoop binary, which isn't available to a
+ * HiveServer running within this JVM. The child JVM does nothing but call executeFromChildJVM, so this task calls
+ * it directly instead.
+ * <p/>
+ * Has to be public with a public no-arg constructor since it is instantiated by the Hive TaskFactory.
+ */
+public class InProcessMapredLocalTask extends MapredLocalTask {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public int execute(DriverContext driverContext) {
+        return executeFromChildJVM(driverContext);
+    }
+}
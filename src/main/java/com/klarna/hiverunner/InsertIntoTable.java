@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.TableType;
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.api.hive_metastoreConstants;
+import org.apache.hadoop.hive.ql.exec.FileSinkOperator;
+import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
+import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
+import org.apache.hadoop.hive.serde2.Deserializer;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.Serializer;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.hive.service.HiveServer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.thrift.TException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes rows straight into the directory of a table or partition, serialized by the SerDe and output format of
+ * the table as found in the meta store. Unlike INSERT ... SELECT no MapReduce job is launched, so that large
+ * fixtures are cheap to load. Text, SequenceFile and RCFile tables are supported, as is any other table whose
+ * output format is a HiveOutputFormat or has a Hive substitute.
+ * <p/>
+ * Rows hold one value per column followed by one value per partition column, in the order of the table
+ * definition. Values of primitive columns are converted to the column type, e.g. the string "2014-01-01" to a
+ * date. Values of array, map and struct columns are given as List, Map and List. Missing partitions are added.
+ * <p/>
+ * Rows are kept in memory until {@link #commit()}, which writes one new file per partition.
+ * <p/>
+ * Please refer to test class {@link com.klarna.hiverunner.InsertIntoTableTest} for usage examples.
+ */
+public final class InsertIntoTable {
+
+    private final HiveServerContainer container;
+    private final String database;
+    private final Table table;
+    private final List<FieldSchema> partitionKeys;
+    private final int columnCount;
+    private final List<Object[]> rows = new ArrayList<>();
+
+    InsertIntoTable(HiveServerContainer container, String database, String tableName) {
+        this.container = container;
+        this.database = database;
+        try {
+            table = container.getClient().get_table(database, tableName);
+        } catch (NoSuchObjectException e) {
+            throw new IllegalArgumentException("Table " + database + "." + tableName + " does not exist", e);
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to get table " + database + "." + tableName + ": " + e, e);
+        }
+        Preconditions.checkArgument(!TableType.VIRTUAL_VIEW.toString().equals(table.getTableType()),
+                "Can't insert into view %s", tableName);
+        Preconditions.checkArgument(table.getParameters() == null
+                || !table.getParameters().containsKey(hive_metastoreConstants.META_TABLE_STORAGE),
+                "Can't insert into non native table %s", tableName);
+        partitionKeys = table.getPartitionKeys();
+        columnCount = table.getSd().getCols().size();
+    }
+
+    /**
+     * Adds a row with one value per column followed by one value per partition column.
+     *
+     * @throws IllegalArgumentException if the number of values does not match the table
+     */
+    public InsertIntoTable addRow(Object... values) {
+        Preconditions.checkArgument(values.length == columnCount + partitionKeys.size(),
+                "Expected %s values for the columns of table %s, got %s: %s",
+                columnCount + partitionKeys.size(), table.getTableName(), values.length, Arrays.toString(values));
+        rows.add(values.clone());
+        return this;
+    }
+
+    /**
+     * Adds the rows, see {@link #addRow(Object...)}.
+     */
+    public InsertIntoTable addRows(Iterable<Object[]> values) {
+        for (Object[] row : values) {
+            addRow(row);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the rows added so far to the table and clears them, so that the builder may be used again.
+     */
+    public void commit() {
+        if (rows.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        HiveConf hiveConf = container.getClient().getHiveConf();
+        try {
+            Writer writer = new Writer(new JobConf(hiveConf));
+            Map<List<String>, List<Object[]>> partitions = groupByPartition(hiveConf);
+            Map<List<String>, Path> locations = getLocations(partitions.keySet());
+            for (Map.Entry<List<String>, List<Object[]>> partition : partitions.entrySet()) {
+                writer.write(locations.get(partition.getKey()), partition.getValue());
+            }
+        } catch (IOException | SerDeException | TException | ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to insert into " + database + "." + table.getTableName() + ": "
+                    + e.getMessage(), e);
+        }
+        container.getPhaseListener().phaseFinished(PhaseListener.Phase.STATEMENT,
+                "insert into " + database + "." + table.getTableName() + " (" + rows.size() + " rows)",
+                System.nanoTime() - start);
+        rows.clear();
+    }
+
+    private Map<List<String>, List<Object[]>> groupByPartition(HiveConf hiveConf) {
+        String defaultPartition = hiveConf.getVar(HiveConf.ConfVars.DEFAULTPARTITIONNAME);
+        Map<List<String>, List<Object[]>> partitions = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            List<String> values = new ArrayList<>();
+            for (int i = columnCount; i < row.length; i++) {
+                values.add(row[i] == null ? defaultPartition : row[i].toString());
+            }
+            List<Object[]> partitionRows = partitions.get(values);
+            if (partitionRows == null) {
+                partitionRows = new ArrayList<>();
+                partitions.put(values, partitionRows);
+            }
+            partitionRows.add(row);
+        }
+        return partitions;
+    }
+
+    /**
+     * Adds the missing partitions in one call to the meta store and looks up the locations of all partitions in
+     * another.
+     */
+    private Map<List<String>, Path> getLocations(Set<List<String>> partitions) throws TException {
+        Map<List<String>, Path> locations = new HashMap<>();
+        if (partitionKeys.isEmpty()) {
+            locations.put(new ArrayList<String>(), new Path(table.getSd().getLocation()));
+            return locations;
+        }
+        List<Map<String, String>> specs = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (List<String> values : partitions) {
+            Map<String, String> spec = new LinkedHashMap<>();
+            for (int i = 0; i < partitionKeys.size(); i++) {
+                spec.put(partitionKeys.get(i).getName(), values.get(i));
+            }
+            specs.add(spec);
+            names.add(Warehouse.makePartName(partitionKeys, values));
+        }
+        MetaStoreDdl.addPartitions(container, database, table.getTableName(), specs, true);
+        HiveServer.HiveServerHandler client = container.getClient();
+        for (Partition partition : client.get_partitions_by_names(database, table.getTableName(), names)) {
+            locations.put(partition.getValues(), new Path(partition.getSd().getLocation()));
+        }
+        Preconditions.checkState(locations.keySet().containsAll(partitions),
+                "Partitions %s of table %s were not added", partitions, table.getTableName());
+        return locations;
+    }
+
+    /**
+     * Serializes rows with the SerDe of the table and writes them with its output format.
+     */
+    private final class Writer {
+
+        private final JobConf jobConf;
+        private final Properties properties;
+        private final Serializer serializer;
+        private final HiveOutputFormat<?, ?> outputFormat;
+        private final StructObjectInspector rowInspector;
+        private final List<ObjectInspectorConverters.Converter> converters = new ArrayList<>();
+
+        private Writer(JobConf jobConf) throws SerDeException, ClassNotFoundException, TException {
+            this.jobConf = jobConf;
+            properties = MetaStoreUtils.getTableMetadata(table);
+
+            Deserializer serDe = MetaStoreUtils.getDeserializer(jobConf, table);
+            Preconditions.checkArgument(serDe instanceof Serializer, "SerDe %s of table %s can't serialize",
+                    table.getSd().getSerdeInfo().getSerializationLib(), table.getTableName());
+            serializer = (Serializer) serDe;
+
+            Class<?> outputFormatClass = jobConf.getClassByName(table.getSd().getOutputFormat());
+            Class<?> hiveOutputFormatClass = HiveFileFormatUtils.getOutputFormatSubstitute(outputFormatClass, false);
+            Preconditions.checkArgument(hiveOutputFormatClass != null, "Unsupported output format %s of table %s",
+                    outputFormatClass.getName(), table.getTableName());
+            outputFormat = (HiveOutputFormat<?, ?>) ReflectionUtils.newInstance(hiveOutputFormatClass, jobConf);
+
+            List<String> names = new ArrayList<>();
+            List<TypeInfo> types = new ArrayList<>();
+            for (FieldSchema column : table.getSd().getCols()) {
+                names.add(column.getName());
+                types.add(TypeInfoUtils.getTypeInfoFromTypeString(column.getType()));
+            }
+            rowInspector = (StructObjectInspector) TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(
+                    TypeInfoFactory.getStructTypeInfo(names, types));
+            for (StructField field : rowInspector.getAllStructFieldRefs()) {
+                ObjectInspector inspector = field.getFieldObjectInspector();
+                converters.add(inspector instanceof PrimitiveObjectInspector ? ObjectInspectorConverters.getConverter(
+                        PrimitiveObjectInspectorFactory.javaStringObjectInspector, inspector) : null);
+            }
+        }
+
+        private void write(Path directory, List<Object[]> partitionRows) throws IOException, SerDeException {
+            Path file = new Path(directory, "fixture-" + UUID.randomUUID());
+            FileSinkOperator.RecordWriter writer = outputFormat.getHiveRecordWriter(jobConf, file,
+                    serializer.getSerializedClass(), false, properties, Reporter.NULL);
+            boolean abort = true;
+            try {
+                for (Object[] row : partitionRows) {
+                    writer.write(serializer.serialize(toColumnValues(row), rowInspector));
+                }
+                abort = false;
+            } finally {
+                writer.close(abort);
+            }
+        }
+
+        private List<Object> toColumnValues(Object[] row) {
+            List<Object> values = new ArrayList<>(columnCount);
+            List<? extends StructField> fields = rowInspector.getAllStructFieldRefs();
+            for (int i = 0; i < columnCount; i++) {
+                Object value = row[i];
+                ObjectInspectorConverters.Converter converter = converters.get(i);
+                if (value != null && converter != null) {
+                    PrimitiveObjectInspector inspector =
+                            (PrimitiveObjectInspector) fields.get(i).getFieldObjectInspector();
+                    if (!inspector.getJavaPrimitiveClass().isInstance(value)) {
+                        value = converter.convert(value.toString());
+                    }
+                }
+                values.add(value);
+            }
+            return values;
+        }
+    }
+}
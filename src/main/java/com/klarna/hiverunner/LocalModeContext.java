@@ -34,6 +34,11 @@ class LocalModeContext extends StandaloneHiveServerContext {
         // Overriding standalone context to reset to default
     }
 
+    @Override
+    protected void configureInProcessExecution(HiveConf conf) {
+        // Overriding standalone context to reset to default
+    }
+
     @Override
     protected void configureAssertionStatus(HiveConf conf) {
         // Overriding standalone context to reset to default
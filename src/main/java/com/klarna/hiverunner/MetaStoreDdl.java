@@ -0,0 +1,360 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.TableType;
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.AlreadyExistsException;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.ql.parse.BaseSemanticAnalyzer;
+import org.apache.hadoop.hive.service.HiveServer;
+import org.apache.thrift.TException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs simple DDL statements as direct calls to the meta store of the HiveServer, bypassing the query compiler,
+ * DDL tasks and hooks of Hive.
+ * <p/>
+ * Supported are CREATE DATABASE, CREATE TABLE ... LIKE and ALTER TABLE ... ADD PARTITION. Consecutive statements
+ * adding partitions to the same table are made one call to the meta store. Any other statement, including the
+ * supported ones with clauses not listed below, is run by the HiveServer as usual:
+ * <pre>
+ * CREATE (DATABASE|SCHEMA) [IF NOT EXISTS] name [COMMENT 'comment'] [LOCATION 'path']
+ * CREATE [EXTERNAL] TABLE [IF NOT EXISTS] name LIKE [database.]table [LOCATION 'path']
+ * ALTER TABLE name ADD [IF NOT EXISTS] PARTITION (column=value, ...) [LOCATION 'path'] [PARTITION ...]
+ * </pre>
+ */
+final class MetaStoreDdl {
+
+    /**
+     * Property enabling direct DDL for setup scripts. Test cases set it in their HiveConf, e.g. through
+     * {@link com.klarna.hiverunner.annotations.HiveProperties}, while a system property of the same name sets the
+     * default for all test cases.
+     */
+    static final String ENABLED_PROPERTY = "hiverunner.setup.direct.ddl";
+
+    private static final String NAME = "(`[^`]+`|\\w+)";
+    private static final String STRING = "('(?:[^'\\\\]|\\\\.)*'|\"(?:[^\"\\\\]|\\\\.)*\")";
+    private static final String LOCATION = "(?:\\s+LOCATION\\s+" + STRING + ")?";
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+
+    private static final Pattern LEADING_COMMENTS = Pattern.compile("^(?:\\s*--[^\\n]*\\n)+");
+    private static final Pattern CANDIDATE = Pattern.compile("\\s*(?:CREATE\\s+(?:DATABASE|SCHEMA)"
+            + "|CREATE\\s+(?:EXTERNAL\\s+)?TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?\\S+\\s+LIKE"
+            + "|ALTER\\s+TABLE\\s+\\S+\\s+ADD\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?PARTITION)\\b.*", FLAGS);
+    private static final Pattern CREATE_DATABASE = Pattern.compile("\\s*CREATE\\s+(?:DATABASE|SCHEMA)"
+            + "(\\s+IF\\s+NOT\\s+EXISTS)?\\s+" + NAME + "(?:\\s+COMMENT\\s+" + STRING + ")?" + LOCATION + "\\s*", FLAGS);
+    private static final Pattern CREATE_TABLE_LIKE = Pattern.compile("\\s*CREATE(\\s+EXTERNAL)?\\s+TABLE"
+            + "(\\s+IF\\s+NOT\\s+EXISTS)?\\s+" + NAME + "\\s+LIKE\\s+" + NAME + "(?:\\s*\\.\\s*" + NAME + ")?"
+            + LOCATION + "\\s*", FLAGS);
+    private static final Pattern ADD_PARTITIONS = Pattern.compile("\\s*ALTER\\s+TABLE\\s+" + NAME + "\\s+ADD"
+            + "(\\s+IF\\s+NOT\\s+EXISTS)?((?:\\s+PARTITION\\s*\\([^)]*\\)" + LOCATION + ")+)\\s*", FLAGS);
+    private static final Pattern PARTITION = Pattern.compile("PARTITION\\s*\\(([^)]*)\\)" + LOCATION, FLAGS);
+    private static final Pattern PARTITION_COLUMN = Pattern.compile(
+            "\\s*" + NAME + "\\s*=\\s*(" + STRING + "|[\\w.+-]+)\\s*(,|$)", FLAGS);
+
+    private final HiveServerContainer container;
+
+    /**
+     * Partitions waiting to be added, if any.
+     */
+    private AddPartitions pendingPartitions;
+
+    MetaStoreDdl(HiveServerContainer container) {
+        this.container = container;
+    }
+
+    static boolean isEnabled(HiveConf conf) {
+        return conf.getBoolean(ENABLED_PROPERTY, Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+
+    /**
+     * Runs the statements in order, the supported ones directly in the meta store and the others on the
+     * HiveServer, see {@link HiveServerContainer#executeStatements(List)}.
+     */
+    void execute(List<String> statements) {
+        List<String> compiled = new ArrayList<>();
+        for (String statement : statements) {
+            if (CANDIDATE.matcher(stripLeadingComments(statement)).matches()) {
+                // Earlier statements may e.g. set the variables or the current database of this one
+                container.executeStatements(compiled);
+                compiled.clear();
+                if (executeDirectly(statement)) {
+                    continue;
+                }
+            }
+            flushPartitions();
+            compiled.add(statement);
+        }
+        flushPartitions();
+        container.executeStatements(compiled);
+    }
+
+    private boolean executeDirectly(String statement) {
+        String expanded = stripLeadingComments(container.expandVariableSubstitutes(statement));
+        String currentDatabase = container.getSessionState().getCurrentDatabase();
+        try {
+            Matcher matcher = ADD_PARTITIONS.matcher(expanded);
+            if (matcher.matches()) {
+                AddPartitions partitions = parsePartitions(matcher, currentDatabase);
+                if (partitions == null) {
+                    return false;
+                }
+                if (pendingPartitions != null && !pendingPartitions.merge(partitions)) {
+                    flushPartitions();
+                }
+                if (pendingPartitions == null) {
+                    pendingPartitions = partitions;
+                }
+                return true;
+            }
+
+            matcher = CREATE_DATABASE.matcher(expanded);
+            if (matcher.matches()) {
+                flushPartitions();
+                createDatabase(matcher, statement);
+                return true;
+            }
+
+            matcher = CREATE_TABLE_LIKE.matcher(expanded);
+            if (matcher.matches()) {
+                flushPartitions();
+                createTableLike(matcher, currentDatabase, statement);
+                return true;
+            }
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to executeQuery Hive query " + statement + ": " + e, e);
+        }
+        return false;
+    }
+
+    private void createDatabase(Matcher matcher, String statement) throws TException {
+        long start = System.nanoTime();
+        Database database = new Database(unescapeIdentifier(matcher.group(2)),
+                matcher.group(3) == null ? null : BaseSemanticAnalyzer.unescapeSQLString(matcher.group(3)),
+                matcher.group(4) == null ? null : BaseSemanticAnalyzer.unescapeSQLString(matcher.group(4)),
+                new HashMap<String, String>());
+        try {
+            container.getClient().create_database(database);
+        } catch (AlreadyExistsException e) {
+            if (matcher.group(1) == null) {
+                throw e;
+            }
+        }
+        statementFinished(statement, start);
+    }
+
+    private void createTableLike(Matcher matcher, String currentDatabase, String statement) throws TException {
+        long start = System.nanoTime();
+        HiveServer.HiveServerHandler client = container.getClient();
+        String likeDatabase = matcher.group(5) == null ? currentDatabase : unescapeIdentifier(matcher.group(4));
+        String likeTable = unescapeIdentifier(matcher.group(5) == null ? matcher.group(4) : matcher.group(5));
+
+        Table table = new Table(client.get_table(likeDatabase, likeTable));
+        table.setDbName(currentDatabase);
+        table.setTableName(unescapeIdentifier(matcher.group(3)));
+        table.setParameters(new HashMap<String, String>());
+        table.setCreateTime(0);
+        table.setLastAccessTime(0);
+        if (matcher.group(1) == null) {
+            table.setTableType(TableType.MANAGED_TABLE.toString());
+        } else {
+            table.setTableType(TableType.EXTERNAL_TABLE.toString());
+            table.putToParameters("EXTERNAL", "TRUE");
+        }
+        table.getSd().setLocation(
+                matcher.group(6) == null ? null : BaseSemanticAnalyzer.unescapeSQLString(matcher.group(6)));
+        try {
+            client.create_table(table);
+        } catch (AlreadyExistsException e) {
+            if (matcher.group(2) == null) {
+                throw e;
+            }
+        }
+        statementFinished(statement, start);
+    }
+
+    /**
+     * @return null if the partition specs can't be parsed
+     */
+    private AddPartitions parsePartitions(Matcher matcher, String currentDatabase) {
+        AddPartitions partitions = new AddPartitions(currentDatabase, unescapeIdentifier(matcher.group(1)),
+                matcher.group(2) != null);
+        Matcher partition = PARTITION.matcher(matcher.group(3));
+        while (partition.find()) {
+            Map<String, String> spec = parseSpec(partition.group(1));
+            if (spec == null) {
+                return null;
+            }
+            String location = partition.group(2);
+            partitions.add(spec, location == null ? null : BaseSemanticAnalyzer.unescapeSQLString(location));
+        }
+        return partitions;
+    }
+
+    private static Map<String, String> parseSpec(String spec) {
+        Map<String, String> values = new LinkedHashMap<>();
+        Matcher column = PARTITION_COLUMN.matcher(spec);
+        int end = 0;
+        while (end < spec.length() && column.find(end) && column.start() == end) {
+            String value = column.group(3) == null ?
+                    column.group(2) : BaseSemanticAnalyzer.unescapeSQLString(column.group(3));
+            values.put(unescapeIdentifier(column.group(1)).toLowerCase(Locale.ROOT), value);
+            end = column.end();
+        }
+        return end == spec.length() && !values.isEmpty() ? values : null;
+    }
+
+    private void flushPartitions() {
+        if (pendingPartitions != null) {
+            AddPartitions partitions = pendingPartitions;
+            pendingPartitions = null;
+            try {
+                addPartitions(container, partitions);
+            } catch (TException e) {
+                throw new IllegalStateException("Failed to add partitions to " + partitions.table + ": " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Adds the partitions to the table in one call to the meta store.
+     * @param partitionSpecs one map from partition column to value per partition
+     * @param ifNotExists skip partitions that already exist instead of failing
+     */
+    static void addPartitions(HiveServerContainer container, String database, String table,
+                              List<Map<String, String>> partitionSpecs, boolean ifNotExists) {
+        AddPartitions partitions = new AddPartitions(database, table, ifNotExists);
+        for (Map<String, String> spec : partitionSpecs) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (Map.Entry<String, String> value : spec.entrySet()) {
+                values.put(value.getKey().toLowerCase(Locale.ROOT), value.getValue());
+            }
+            partitions.add(values, null);
+        }
+        try {
+            addPartitions(container, partitions);
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to add partitions to " + table + ": " + e, e);
+        }
+    }
+
+    private static void addPartitions(HiveServerContainer container, AddPartitions partitions) throws TException {
+        long start = System.nanoTime();
+        HiveServer.HiveServerHandler client = container.getClient();
+        Table table = client.get_table(partitions.database, partitions.table);
+        List<FieldSchema> keys = table.getPartitionKeys();
+
+        Set<String> existing = partitions.ifNotExists ?
+                new HashSet<>(client.get_partition_names(partitions.database, partitions.table, (short) -1)) :
+                new HashSet<String>();
+        int now = (int) (System.currentTimeMillis() / 1000);
+        List<Partition> metaStorePartitions = new ArrayList<>();
+        for (int i = 0; i < partitions.specs.size(); i++) {
+            Map<String, String> spec = partitions.specs.get(i);
+            if (spec.size() != keys.size()) {
+                throw new IllegalArgumentException("Partition spec " + spec + " does not match the partition columns "
+                        + keys + " of table " + partitions.table);
+            }
+            List<String> values = new ArrayList<>();
+            for (FieldSchema key : keys) {
+                String value = spec.get(key.getName().toLowerCase(Locale.ROOT));
+                if (value == null) {
+                    throw new IllegalArgumentException("Partition spec " + spec + " lacks column " + key.getName()
+                            + " of table " + partitions.table);
+                }
+                values.add(value);
+            }
+            if (!existing.add(Warehouse.makePartName(keys, values)) && partitions.ifNotExists) {
+                continue;
+            }
+            StorageDescriptor sd = new StorageDescriptor(table.getSd());
+            sd.setLocation(partitions.locations.get(i));
+            metaStorePartitions.add(new Partition(values, partitions.database, partitions.table, now, 0, sd,
+                    new HashMap<String, String>()));
+        }
+        if (!metaStorePartitions.isEmpty()) {
+            client.add_partitions(metaStorePartitions);
+        }
+        container.getPhaseListener().phaseFinished(PhaseListener.Phase.STATEMENT,
+                "add_partitions " + partitions.table + " (" + metaStorePartitions.size() + ")",
+                System.nanoTime() - start);
+    }
+
+    private void statementFinished(String statement, long start) {
+        container.getPhaseListener().phaseFinished(PhaseListener.Phase.STATEMENT, statement, System.nanoTime() - start);
+    }
+
+    private static String stripLeadingComments(String statement) {
+        return LEADING_COMMENTS.matcher(statement).replaceFirst("");
+    }
+
+    private static String unescapeIdentifier(String name) {
+        return BaseSemanticAnalyzer.unescapeIdentifier(name);
+    }
+
+    /**
+     * Partitions to add to one table.
+     */
+    private static final class AddPartitions {
+
+        private final String database;
+        private final String table;
+        private final boolean ifNotExists;
+        private final List<Map<String, String>> specs = new ArrayList<>();
+        private final List<String> locations = new ArrayList<>();
+
+        AddPartitions(String database, String table, boolean ifNotExists) {
+            this.database = database;
+            this.table = table;
+            this.ifNotExists = ifNotExists;
+        }
+
+        void add(Map<String, String> spec, String location) {
+            specs.add(spec);
+            locations.add(location);
+        }
+
+        /**
+         * Takes over the partitions of the other statement if they go to the same table.
+         */
+        boolean merge(AddPartitions other) {
+            if (!database.equalsIgnoreCase(other.database) || !table.equalsIgnoreCase(other.table)
+                    || ifNotExists != other.ifNotExists) {
+                return false;
+            }
+            specs.addAll(other.specs);
+            locations.addAll(other.locations);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveServerLifecycle;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runner that runs the test methods of a test class concurrently within this JVM.
+ * <p/>
+ * Each test method gets its own HiveServer with its own in-memory meta store, warehouse and scratch dirs, exactly
+ * as with the {@link StandaloneHiveRunner}. This allows a single JVM to replace a fork per CPU core.
+ * The number of threads is set by the system property <code>hiverunner.parallel.threads</code> and defaults to
+ * the number of available processors.
+ * <p/>
+ * Test methods must not share mutable state through fields other than the ones injected by HiveRunner.
+ * {@link com.klarna.hiverunner.annotations.HiveServerLifecycle.Strategy#RESET} is not supported since it shares
+ * one HiveServer between all test methods.
+ */
+public class ParallelHiveRunner extends StandaloneHiveRunner {
+
+    /**
+     * System property controlling the number of test methods run concurrently.
+     */
+    public static final String THREADS_PROPERTY = "hiverunner.parallel.threads";
+
+    public ParallelHiveRunner(Class<?> clazz) throws InitializationError {
+        super(clazz);
+
+        HiveServerLifecycle lifecycle = clazz.getAnnotation(HiveServerLifecycle.class);
+        if (lifecycle != null && lifecycle.value() == HiveServerLifecycle.Strategy.RESET) {
+            throw new InitializationError(
+                    "ParallelHiveRunner does not support HiveServerLifecycle.Strategy.RESET on " + clazz.getName());
+        }
+
+        setScheduler(new ParallelScheduler(
+                Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Runs each test method as a task on a fixed size thread pool.
+     */
+    private static class ParallelScheduler implements RunnerScheduler {
+
+        private final ExecutorService executor;
+
+        ParallelScheduler(int threads) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "hiverunner-parallel-" + threadCount.incrementAndGet());
+                }
+            });
+        }
+
+        @Override
+        public void schedule(Runnable childStatement) {
+            executor.submit(childStatement);
+        }
+
+        @Override
+        public void finished() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for test methods to finish", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.CommandNeedRetryException;
+import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.processors.CommandProcessorResponse;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the statements of a script with independent DDL statements executed concurrently, see
+ * {@link StatementDependencies}.
+ * <p/>
+ * Consecutive DDL statements form a batch, which is run by a number of worker threads, each with its own session
+ * on the meta store of the HiveServer. The sessions start out with the configuration, variables and current
+ * database of the HiveServer session. A statement waits for all earlier statements of the batch that it conflicts
+ * with. Any other statement, and the last statement of the script so that it may be profiled, is run on the
+ * HiveServer session once all earlier statements are done.
+ */
+final class ParallelStatementExecutor {
+
+    /**
+     * Property controlling the number of sessions running statements concurrently. Test cases set it in their
+     * HiveConf, e.g. through {@link com.klarna.hiverunner.annotations.HiveProperties}, while a system property of the
+     * same name sets the default for all test cases. The default of 1 runs all statements one after another on the
+     * HiveServer session.
+     */
+    static final String THREADS_PROPERTY = "hiverunner.statement.threads";
+
+    static final int DEFAULT_THREADS = 1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelStatementExecutor.class);
+
+    private final HiveServerContainer container;
+
+    private final int threads;
+
+    ParallelStatementExecutor(HiveServerContainer container, int threads) {
+        this.container = container;
+        this.threads = threads;
+    }
+
+    static int getConfiguredThreads(HiveConf conf) {
+        return conf.getInt(THREADS_PROPERTY, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS));
+    }
+
+    void execute(List<String> statements) {
+        List<Task> batch = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i++) {
+            String statement = statements.get(i);
+            StatementDependencies dependencies = i == statements.size() - 1 ? null : StatementDependencies.analyze(
+                    container.expandVariableSubstitutes(statement), container.getSessionState().getCurrentDatabase());
+            if (dependencies != null) {
+                batch.add(new Task(statement, dependencies, batch));
+            } else {
+                runBatch(batch);
+                batch.clear();
+                container.executeStatement(statement);
+            }
+        }
+        runBatch(batch);
+    }
+
+    private void runBatch(List<Task> batch) {
+        if (batch.size() == 1) {
+            container.executeStatement(batch.get(0).statement);
+            return;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Batch run = new Batch(batch, container.getSessionState());
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(threads, batch.size()); i++) {
+            Thread worker = new Thread(run, "hiverunner-statement-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for statements", e);
+            }
+        }
+        run.throwFailures();
+    }
+
+    /**
+     * The statements of a batch, handed out to the workers in order.
+     */
+    private final class Batch implements Runnable {
+
+        private final List<Task> tasks;
+        private final SessionState hiveServerSession;
+        private final AtomicInteger next = new AtomicInteger();
+        private final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        Batch(List<Task> tasks, SessionState hiveServerSession) {
+            this.tasks = tasks;
+            this.hiveServerSession = hiveServerSession;
+        }
+
+        @Override
+        public void run() {
+            HiveConf conf = new HiveConf(hiveServerSession.getConf());
+            conf.setVar(HiveConf.ConfVars.HIVESESSIONID, "");
+            SessionState session = new SessionState(conf);
+            session.setCurrentDatabase(hiveServerSession.getCurrentDatabase());
+            session.getHiveVariables().putAll(hiveServerSession.getHiveVariables());
+            SessionState.start(session);
+            try {
+                // Tasks are taken in order, so the tasks waited for are already running or done
+                int i = next.getAndIncrement();
+                while (i < tasks.size() && failures.isEmpty()) {
+                    tasks.get(i).run(conf, failures);
+                    i = next.getAndIncrement();
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            } finally {
+                // Releases the meta store connection of this session
+                Hive.closeCurrent();
+                close(session);
+            }
+        }
+
+        /**
+         * Closes the history stream and deletes the temp files of the session. SessionState.close() only deletes
+         * the resource dir.
+         */
+        private void close(SessionState session) {
+            session.getHiveHistory().closeStream();
+            File tmpOutputFile = session.getTmpOutputFile();
+            if (tmpOutputFile != null && tmpOutputFile.exists() && !tmpOutputFile.delete()) {
+                LOGGER.warn("Failed to delete " + tmpOutputFile);
+            }
+            try {
+                session.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close session " + session.getSessionId() + ": " + e.getMessage());
+            }
+        }
+
+        void throwFailures() {
+            if (failures.isEmpty()) {
+                return;
+            }
+            Throwable first = failures.get(0);
+            IllegalStateException exception = first instanceof IllegalStateException ?
+                    (IllegalStateException) first : new IllegalStateException(first.getMessage(), first);
+            for (Throwable failure : failures.subList(1, failures.size())) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+    }
+
+    private final class Task {
+
+        private final String statement;
+        private final StatementDependencies dependencies;
+        private final List<Task> predecessors = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Task(String statement, StatementDependencies dependencies, List<Task> earlier) {
+            this.statement = statement;
+            this.dependencies = dependencies;
+            for (Task task : earlier) {
+                if (dependencies.conflictsWith(task.dependencies)) {
+                    predecessors.add(task);
+                }
+            }
+        }
+
+        void run(HiveConf conf, List<Throwable> failures) throws InterruptedException {
+            try {
+                for (Task predecessor : predecessors) {
+                    predecessor.done.await();
+                }
+                if (failures.isEmpty()) {
+                    execute(conf);
+                }
+            } catch (RuntimeException e) {
+                failures.add(e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void execute(HiveConf conf) {
+            LOGGER.debug("Executing concurrently: " + statement);
+            long start = System.nanoTime();
+            Driver driver = new Driver(conf);
+            try {
+                CommandProcessorResponse response = driver.run(statement);
+                if (response.getResponseCode() != 0) {
+                    throw new IllegalStateException("Failed to executeQuery Hive query " + statement + ": "
+                            + response.getErrorMessage());
+                }
+            } catch (CommandNeedRetryException e) {
+                throw new IllegalStateException(
+                        "Failed to executeQuery Hive query " + statement + ": " + e.getMessage(), e);
+            } finally {
+                driver.close();
+                container.getPhaseListener().phaseFinished(
+                        PhaseListener.Phase.STATEMENT, statement, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+/**
+ * Receives the time spent in each phase of a HiveShell life cycle.
+ * <p/>
+ * Phases may nest: the statements of setup scripts and scripts under test are reported as STATEMENT phases of
+ * their own, as well as part of the SETUP_SCRIPTS and SCRIPTS_UNDER_TEST phases.
+ */
+public interface PhaseListener {
+
+    enum Phase {
+        /**
+         * Start of the HiveServer, or its restore from a setup snapshot.
+         */
+        SERVER_INIT,
+        SETUP_SCRIPTS,
+        RESOURCES,
+        SCRIPTS_UNDER_TEST,
+        /**
+         * A single statement, including the fetch of its result. The detail is the statement.
+         */
+        STATEMENT,
+        /**
+         * Tear down or reset of the HiveServer.
+         */
+        TEAR_DOWN
+    }
+
+    PhaseListener NO_OP = new PhaseListener() {
+        @Override
+        public void phaseFinished(Phase phase, String detail, long nanos) {
+        }
+    };
+
+    /**
+     * @param phase  The finished phase
+     * @param detail Phase specific detail, or null
+     * @param nanos  Time spent in the phase
+     */
+    void phaseFinished(Phase phase, String detail, long nanos);
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.junit.Assert;
+import org.junit.ComparisonFailure;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compares query plans with golden files, to catch changes that e.g. turn a map join into a shuffle join or add a
+ * stage.
+ * <p/>
+ * Golden files are class path resources, typically stored next to the scripts of
+ * {@link com.klarna.hiverunner.annotations.HiveSQL#files()}, and contain the string form of an {@link ExplainPlan}.
+ * Run the tests with the system property <code>hiverunner.golden.update=true</code> to write the actual plans to
+ * the golden files in <code>src/test/resources</code>, or the directory set by <code>hiverunner.golden.dir</code>.
+ * <p/>
+ * Please refer to test class {@link com.klarna.hiverunner.ExplainPlanTest} for usage examples.
+ */
+public final class PlanAssert {
+
+    public static final String UPDATE_PROPERTY = "hiverunner.golden.update";
+    public static final String GOLDEN_DIR_PROPERTY = "hiverunner.golden.dir";
+    public static final String DEFAULT_GOLDEN_DIR = "src/test/resources";
+
+    private PlanAssert() {
+    }
+
+    /**
+     * Asserts that the plan matches the golden file, given as a class path resource.
+     */
+    public static void assertPlan(String goldenFile, ExplainPlan actual) {
+        if (Boolean.getBoolean(UPDATE_PROPERTY)) {
+            update(goldenFile, actual);
+            return;
+        }
+        String expected = read(goldenFile, actual);
+        if (!normalize(expected).equals(normalize(actual.toString()))) {
+            throw new ComparisonFailure("Plan differs from golden file " + goldenFile + ", run with -D"
+                    + UPDATE_PROPERTY + "=true to update it", expected, actual.toString());
+        }
+    }
+
+    private static String read(String goldenFile, ExplainPlan actual) {
+        URL resource = PlanAssert.class.getClassLoader().getResource(goldenFile);
+        if (resource == null) {
+            Assert.fail("Golden file " + goldenFile + " not found on class path, run with -D" + UPDATE_PROPERTY
+                    + "=true to create it. Actual plan:\n" + actual);
+        }
+        try {
+            return Resources.toString(resource, Charsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read golden file " + goldenFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void update(String goldenFile, ExplainPlan actual) {
+        Path file = Paths.get(System.getProperty(GOLDEN_DIR_PROPERTY, DEFAULT_GOLDEN_DIR), goldenFile);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.write(file, actual.toString().getBytes(Charsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write golden file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String normalize(String plan) {
+        return plan.replace("\r\n", "\n").trim();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.TaskFactory;
+import org.apache.hadoop.hive.ql.exec.mr.MapredLocalTask;
+import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
+
+/**
+ * Standalone context with the optimizers of a production cluster switched on, so that test cases get the same plan
+ * shapes as in production, e.g. map joins instead of shuffle joins.
+ * <p/>
+ * The hash tables of map joins are built within this JVM by {@link InProcessMapredLocalTask}. Hive falls back to
+ * the common join if a hash table doesn't fit in the configured share of the heap, just like on a cluster.
+ */
+class ProductionOptimizerContext extends StandaloneHiveServerContext {
+
+    private static boolean inProcessLocalTaskInstalled = false;
+
+    ProductionOptimizerContext(TemporaryFolder basedir) {
+        super(basedir);
+    }
+
+    @Override
+    protected void configureMapReduceOptimizations(HiveConf conf) {
+        installInProcessLocalTask();
+
+        conf.setBoolVar(HIVECONVERTJOIN, true);
+        conf.setBoolVar(HIVESKEWJOIN, true);
+        conf.setBoolVar(HIVEOPTINDEXFILTER, true);
+        conf.setBoolVar(HIVEMETADATAONLYQUERIES, true);
+    }
+
+    /**
+     * The task factory is static and shared by all HiveServers in the JVM. Replacing the local task is harmless for
+     * other contexts since the child JVM it replaces can't be launched from within a test anyway.
+     */
+    @SuppressWarnings("unchecked")
+    private static synchronized void installInProcessLocalTask() {
+        if (inProcessLocalTaskInstalled) {
+            return;
+        }
+        for (TaskFactory.taskTuple<?> tuple : TaskFactory.taskvec) {
+            if (tuple.workClass == MapredLocalWork.class && tuple.taskClass == MapredLocalTask.class) {
+                ((TaskFactory.taskTuple<MapredLocalWork>) tuple).taskClass = InProcessMapredLocalTask.class;
+            }
+        }
+        inProcessLocalTaskInstalled = true;
+    }
+}
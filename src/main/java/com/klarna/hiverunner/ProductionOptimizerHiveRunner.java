@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.model.InitializationError;
+
+/**
+ * Runs the test cases with map joins, skew joins, index filters and metadata only queries switched on, see
+ * {@link ProductionOptimizerContext}.
+ */
+public class ProductionOptimizerHiveRunner extends StandaloneHiveRunner {
+
+    public ProductionOptimizerHiveRunner(Class<?> clazz) throws InitializationError {
+        super(clazz);
+    }
+
+    protected HiveServerContext getContext(TemporaryFolder basedir) {
+        return new ProductionOptimizerContext(basedir);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profile of a single executed statement, built from the Hive PerfLogger, the query plan and the counters of the
+ * MapReduce jobs launched by the statement.
+ * <p/>
+ * Statements not run by the Hive Driver, e.g. set and add commands, have no compile or execution time, stages or
+ * jobs.
+ */
+public class QueryProfile {
+
+    /**
+     * Counter of the records read by the map tasks.
+     */
+    static final String MAP_INPUT_RECORDS = "org.apache.hadoop.mapreduce.TaskCounter.MAP_INPUT_RECORDS";
+
+    private static final String FILE_SYSTEM_COUNTER = "org.apache.hadoop.mapreduce.FileSystemCounter.";
+
+    private final String statement;
+    private final long totalMillis;
+    private final long compileMillis;
+    private final long executionMillis;
+    private final List<String> stageTypes;
+    private final int mapReduceJobs;
+    private final Map<String, Long> counters;
+    private final long rowsFetched;
+
+    QueryProfile(String statement, long totalMillis, long compileMillis, long executionMillis,
+                 List<String> stageTypes, int mapReduceJobs, Map<String, Long> counters, long rowsFetched) {
+        this.statement = statement;
+        this.totalMillis = totalMillis;
+        this.compileMillis = compileMillis;
+        this.executionMillis = executionMillis;
+        this.stageTypes = Collections.unmodifiableList(stageTypes);
+        this.mapReduceJobs = mapReduceJobs;
+        this.counters = Collections.unmodifiableMap(counters);
+        this.rowsFetched = rowsFetched;
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    /**
+     * Wall clock time of the statement, including the fetch of its result.
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getCompileMillis() {
+        return compileMillis;
+    }
+
+    public long getExecutionMillis() {
+        return executionMillis;
+    }
+
+    /**
+     * Types of the stages in the plan of the statement, e.g. MAPRED, MOVE or DDL. Stages of conditional tasks are
+     * listed whether they were run or not.
+     */
+    public List<String> getStageTypes() {
+        return stageTypes;
+    }
+
+    /**
+     * Number of MapReduce jobs actually launched by the statement.
+     */
+    public int getMapReduceJobs() {
+        return mapReduceJobs;
+    }
+
+    /**
+     * Hadoop counters of the MapReduce jobs launched by the statement, keyed by group and counter name as in
+     * <code>org.apache.hadoop.mapreduce.TaskCounter.MAP_INPUT_RECORDS</code> and summed over all jobs.
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * Records read by the map tasks of all jobs.
+     */
+    public long getRowsRead() {
+        return getCounter(MAP_INPUT_RECORDS);
+    }
+
+    /**
+     * Bytes read from all file systems by the jobs, as counted by Hadoop. Note that the local job runner also
+     * counts the job files it reads.
+     */
+    public long getBytesRead() {
+        long bytesRead = 0;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            if (counter.getKey().startsWith(FILE_SYSTEM_COUNTER) && counter.getKey().endsWith("_BYTES_READ")) {
+                bytesRead += counter.getValue();
+            }
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Number of result rows fetched, or -1 if the result was not fetched as part of the statement, e.g. for
+     * scripts and streamed queries.
+     */
+    public long getRowsFetched() {
+        return rowsFetched;
+    }
+
+    private long getCounter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryProfile{statement='" + statement + "', totalMillis=" + totalMillis + ", compileMillis="
+                + compileMillis + ", executionMillis=" + executionMillis + ", stageTypes=" + stageTypes
+                + ", mapReduceJobs=" + mapReduceJobs + ", rowsRead=" + getRowsRead() + ", bytesRead="
+                + getBytesRead() + ", rowsFetched=" + rowsFetched + "}";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hive.service.HiveServer;
+import org.apache.thrift.TException;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows of a query result, fetching them from the HiveServer in batches.
+ * <p/>
+ * The HiveServer only keeps the result of the last query, so a cursor is closed as soon as another statement is
+ * executed on the same HiveShell, and when the HiveShell is torn down. Iterating a closed cursor fails with an
+ * IllegalStateException.
+ */
+public class ResultCursor implements Iterator<String>, Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final HiveServer.HiveServerHandler client;
+
+    private final int batchSize;
+
+    private List<String> batch;
+
+    private int position;
+
+    private boolean exhausted;
+
+    private boolean closed;
+
+    ResultCursor(HiveServer.HiveServerHandler client, int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size should be positive but was %s", batchSize);
+        this.client = client;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(!closed, "Query result was closed");
+        if (batch != null && position < batch.size()) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        try {
+            batch = client.fetchN(batchSize);
+        } catch (TException e) {
+            throw new IllegalStateException("Failed to fetch query result: " + e.getMessage(), e);
+        }
+        position = 0;
+        exhausted = batch.size() < batchSize;
+        return !batch.isEmpty();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Query results are read only");
+    }
+
+    /**
+     * Discards the remaining rows. Closing an already closed cursor has no effect.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        batch = null;
+    }
+}
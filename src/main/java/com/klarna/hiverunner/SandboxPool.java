@@ -0,0 +1,229 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Recycles the sand box directories of the HiveServers.
+ * <p/>
+ * A sand box is emptied in a background thread when it is released and then handed out again, so that test
+ * methods neither wait for the recursive delete of the previous sand box nor create a new one. Files with the path
+ * of the sand box in the {@link InMemoryFileSystem} are deleted as well. All sand boxes live
+ * in one directory per JVM, which is deleted on exit.
+ * <p/>
+ * Set the system property <code>hiverunner.sandbox.tmpfs</code> to true to place the sand boxes on the RAM backed
+ * file system mounted at /dev/shm. The default temp dir is used if there is no such file system.
+ */
+final class SandboxPool {
+
+    static final String TMPFS_PROPERTY = "hiverunner.sandbox.tmpfs";
+
+    static final String TMPFS_DIR = "/dev/shm";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SandboxPool.class);
+
+    private static SandboxPool instance;
+
+    private final Path root;
+
+    private final Queue<File> recycled = new ConcurrentLinkedQueue<>();
+
+    private final ExecutorService cleaner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hiverunner-sandbox-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    SandboxPool(Path parent) throws IOException {
+        root = Files.createTempDirectory(parent, "hiverunner");
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                cleaner.shutdownNow();
+                try {
+                    delete(root);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete sand boxes in " + root + ": " + e.getMessage());
+                }
+            }
+        });
+        LOGGER.info("Sand boxes are created in " + root);
+    }
+
+    /**
+     * The pool shared by all HiveServers in this JVM.
+     */
+    static synchronized SandboxPool getInstance() {
+        if (instance == null) {
+            try {
+                instance = new SandboxPool(getParentDir());
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to create sand box dir: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    private static Path getParentDir() {
+        Path tmpfs = Paths.get(TMPFS_DIR);
+        if (Boolean.getBoolean(TMPFS_PROPERTY)) {
+            if (Files.isDirectory(tmpfs) && Files.isWritable(tmpfs)) {
+                return tmpfs;
+            }
+            LOGGER.warn(TMPFS_DIR + " is not available, using the default temp dir for sand boxes");
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Creates a sand box that behaves like a TemporaryFolder but takes its directory from this pool on create and
+     * returns it on delete.
+     */
+    TemporaryFolder newTemporaryFolder() {
+        return new RecycledFolder();
+    }
+
+    /**
+     * Returns an empty directory.
+     */
+    File acquire() throws IOException {
+        File dir = recycled.poll();
+        if (dir != null) {
+            return dir;
+        }
+        return Files.createTempDirectory(root, "sandbox").toFile();
+    }
+
+    /**
+     * Empties the directory in the background and takes it back into the pool. Directories that can't be emptied,
+     * e.g. since a file is still open on Windows, are left for the delete on exit.
+     */
+    void release(final File dir) {
+        Runnable recycle = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deleteContents(dir.toPath());
+                    InMemoryFileSystem.deleteTree(dir.getAbsolutePath());
+                    recycled.add(dir);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to empty sand box " + dir + ": " + e.getMessage());
+                }
+            }
+        };
+        try {
+            cleaner.execute(recycle);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Waits for the directories released so far to be back in the pool.
+     */
+    void awaitReleased() throws InterruptedException, ExecutionException {
+        cleaner.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    private static void deleteContents(final Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path visited, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                if (!visited.equals(dir)) {
+                    Files.delete(visited);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (Files.exists(dir)) {
+            deleteContents(dir);
+            Files.delete(dir);
+        }
+    }
+
+    private class RecycledFolder extends TemporaryFolder {
+
+        private File folder;
+
+        private boolean released = false;
+
+        @Override
+        public void create() throws IOException {
+            folder = acquire();
+            released = false;
+        }
+
+        @Override
+        public File getRoot() {
+            if (folder == null) {
+                throw new IllegalStateException("the temporary folder has not yet been created");
+            }
+            return folder;
+        }
+
+        @Override
+        public void delete() {
+            // Released once only, since a directory in the pool twice would be handed out to two sand boxes
+            if (folder != null && !released) {
+                released = true;
+                release(folder);
+            }
+        }
+    }
+}
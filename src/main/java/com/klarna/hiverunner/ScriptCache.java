@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM wide cache of script files, holding the decoded script and its statements.
+ * <p/>
+ * Entries are keyed on path, modification time, size and charset, so changed files are read again. The cache is
+ * bounded by the total number of characters of the cached scripts, set by the system property
+ * <code>hiverunner.script.cache.chars</code> (default 32M), and evicts the least recently used scripts first.
+ */
+public final class ScriptCache {
+
+    /**
+     * System property controlling the total number of characters of cached scripts.
+     */
+    public static final String MAX_CHARS_PROPERTY = "hiverunner.script.cache.chars";
+
+    public static final long DEFAULT_MAX_CHARS = 32 * 1024 * 1024;
+
+    private static final ScriptCache INSTANCE = new ScriptCache(Long.getLong(MAX_CHARS_PROPERTY, DEFAULT_MAX_CHARS));
+
+    private final long maxChars;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Cached scripts by content, to find the statements of a script read through this cache.
+     */
+    private final Map<String, Entry> entriesByScript = new HashMap<>();
+
+    private long chars;
+
+    ScriptCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    public static ScriptCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reads and decodes the given script file, or returns the cached script if the file is unchanged.
+     */
+    public String read(Path script, Charset charset) throws IOException {
+        Path file = script.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Key key = new Key(file, attributes.lastModifiedTime().toMillis(), attributes.size(), charset);
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.script;
+            }
+        }
+
+        String decoded = new String(Files.readAllBytes(file), charset);
+
+        synchronized (this) {
+            Entry entry = entriesByScript.get(decoded);
+            if (entry == null) {
+                entry = new Entry(decoded);
+                entriesByScript.put(decoded, entry);
+            }
+            if (entries.put(key, entry) == null) {
+                chars += decoded.length();
+            }
+            evict();
+            return entry.script;
+        }
+    }
+
+    /**
+     * Splits the given script into statements. The statements of scripts read through this cache are only split
+     * once.
+     */
+    public List<String> split(String script) {
+        Entry entry;
+        synchronized (this) {
+            entry = entriesByScript.get(script);
+        }
+        return entry == null ? StatementSplitter.split(script) : entry.getStatements();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (chars > maxChars && entries.size() > 1) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            chars -= evicted.script.length();
+            if (!entries.containsValue(evicted)) {
+                entriesByScript.remove(evicted.script);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final Path file;
+        private final long lastModified;
+        private final long size;
+        private final Charset charset;
+
+        Key(Path file, long lastModified, long size, Charset charset) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return file.equals(other.file) && lastModified == other.lastModified && size == other.size
+                    && charset.equals(other.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = file.hashCode();
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (int) (size ^ (size >>> 32));
+            return 31 * result + charset.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final String script;
+        private volatile List<String> statements;
+
+        Entry(String script) {
+            this.script = script;
+        }
+
+        List<String> getStatements() {
+            if (statements == null) {
+                statements = Collections.unmodifiableList(StatementSplitter.split(script));
+            }
+            return statements;
+        }
+    }
+}
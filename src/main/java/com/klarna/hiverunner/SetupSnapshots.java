@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshots of set up HiveServers, keyed by a fingerprint of their setup.
+ * <p/>
+ * Snapshots are kept in a temporary folder for the duration of the test class, or in a cache directory where they
+ * survive between test runs. Cache hits, misses and the setup time saved are logged.
+ * <p/>
+ * See {@link com.klarna.hiverunner.annotations.HiveSetupSnapshot}
+ */
+public class SetupSnapshots extends ExternalResource {
+
+    /**
+     * System property controlling the directory of persistent setup snapshots.
+     */
+    public static final String CACHE_DIR_PROPERTY = "hiverunner.cache.dir";
+
+    public static final String DEFAULT_CACHE_DIR = "target/hiverunner-cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SetupSnapshots.class);
+
+    private final TemporaryFolder temporaryDir = new TemporaryFolder();
+
+    private final Path cacheDir;
+
+    private final ConcurrentMap<String, HiveServerSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    /**
+     * @param cacheDir Directory where snapshots are kept between test runs. Null to only keep them for the duration
+     *                 of the test class.
+     */
+    public SetupSnapshots(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        temporaryDir.create();
+        if (cacheDir != null) {
+            Files.createDirectories(cacheDir);
+        }
+    }
+
+    @Override
+    protected void after() {
+        temporaryDir.delete();
+        LOGGER.info("Setup snapshots: " + hits + " hits, " + misses + " misses, saved " + savedMillis + " ms");
+    }
+
+    /**
+     * Starts the given HiveServer from the snapshot of the setup with the given fingerprint.
+     * @return false if there is no such snapshot, leaving the HiveServer untouched.
+     */
+    public boolean restore(String fingerprint, HiveServerContainer container, Map<String, String> testConfig,
+                           HiveServerContext context) {
+        HiveServerSnapshot snapshot = find(fingerprint);
+        if (snapshot == null) {
+            misses.incrementAndGet();
+            LOGGER.info("Setup snapshot cache miss for " + fingerprint);
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        container.init(testConfig, context, snapshot);
+        long saved = snapshot.getSetupMillis() - (System.currentTimeMillis() - start);
+
+        hits.incrementAndGet();
+        savedMillis.addAndGet(saved);
+        LOGGER.info("Setup snapshot cache hit for " + fingerprint + ", saved " + saved + " ms");
+        return true;
+    }
+
+    /**
+     * Captures a snapshot of the given HiveServer, set up as described by the given fingerprint.
+     * Test methods running concurrently may capture the same setup. Only the first snapshot is kept.
+     * @param setupMillis Time it took to start and set up the HiveServer
+     */
+    public void capture(String fingerprint, HiveServerContainer container, long setupMillis) {
+        if (snapshots.containsKey(fingerprint)) {
+            return;
+        }
+
+        HiveServerSnapshot snapshot;
+        if (cacheDir == null) {
+            snapshot = container.snapshot(temporaryDir.getRoot().toPath().resolve(UUID.randomUUID().toString()),
+                    setupMillis);
+        } else {
+            snapshot = captureToCache(fingerprint, container, setupMillis);
+        }
+        snapshots.putIfAbsent(fingerprint, snapshot);
+    }
+
+    private HiveServerSnapshot find(String fingerprint) {
+        HiveServerSnapshot snapshot = snapshots.get(fingerprint);
+        if (snapshot == null && cacheDir != null && Files.isDirectory(cacheDir.resolve(fingerprint))) {
+            try {
+                snapshot = HiveServerSnapshot.open(cacheDir.resolve(fingerprint));
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring unreadable setup snapshot " + cacheDir.resolve(fingerprint) + ": "
+                        + e.getMessage(), e);
+                return null;
+            }
+            HiveServerSnapshot previous = snapshots.putIfAbsent(fingerprint, snapshot);
+            if (previous != null) {
+                snapshot = previous;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Captures to a temporary directory that is then moved in place, so that other JVMs sharing the cache
+     * directory never see a partial snapshot.
+     */
+    private HiveServerSnapshot captureToCache(String fingerprint, HiveServerContainer container, long setupMillis) {
+        Path partial = cacheDir.resolve(fingerprint + ".partial-" + UUID.randomUUID());
+        Path target = cacheDir.resolve(fingerprint);
+        container.snapshot(partial, setupMillis);
+        try {
+            try {
+                Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Captured by another JVM in the meantime
+                deleteTree(partial);
+            } catch (IOException e) {
+                if (!Files.isDirectory(target)) {
+                    throw e;
+                }
+                // Non empty target directory, captured by another JVM in the meantime
+                deleteTree(partial);
+            }
+            return HiveServerSnapshot.open(target);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store setup snapshot " + target + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -17,13 +17,10 @@
 package com.klarna.hiverunner;
 
 import com.google.common.base.Preconditions;
-import com.google.common.io.Resources;
-import com.klarna.hiverunner.annotations.HiveProperties;
 import com.klarna.hiverunner.annotations.HiveResource;
-import com.klarna.hiverunner.annotations.HiveSQL;
-import com.klarna.hiverunner.annotations.HiveSetupScript;
+import com.klarna.hiverunner.annotations.HiveServerLifecycle;
+import com.klarna.hiverunner.annotations.HiveSetupSnapshot;
 import com.klarna.hiverunner.builder.HiveShellBuilder;
-import com.klarna.reflection.ReflectionUtils;
 import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
@@ -35,17 +32,14 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import static org.reflections.ReflectionUtils.withAnnotation;
 
 /**
  * JUnit 4 runner that runs hive sql on a HiveServer residing in this JVM. No external dependencies needed.
@@ -54,8 +48,44 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StandaloneHiveRunner.class);
 
+    /**
+     * One pool per runner class since runners may provide different contexts.
+     */
+    private static final Map<Class<?>, HiveServerPool> SERVER_POOLS = new HashMap<>();
+
+    private final HiveServerLifecycle.Strategy lifecycleStrategy;
+
+    /**
+     * The annotated fields of the test class, looked up once for all test methods.
+     */
+    private final TestClassMetadata metadata;
+
+    /**
+     * Sand box shared by all test methods when the HiveServer is reset rather than torn down between them.
+     */
+    private final TemporaryFolder classBaseDir = SandboxPool.getInstance().newTemporaryFolder();
+
+    private HiveServerContext classContext;
+
+    private HiveServerContainer classHiveServerContainer;
+
+    /**
+     * Null unless the test class is annotated with {@link HiveSetupSnapshot}.
+     */
+    private final SetupSnapshots setupSnapshots;
+
+    /**
+     * Null unless the system property {@link TimingReport#ENABLED_PROPERTY} is true.
+     */
+    private final TimingReport timingReport;
+
     public StandaloneHiveRunner(Class<?> clazz) throws InitializationError {
         super(clazz);
+        metadata = TestClassMetadata.create(clazz);
+        HiveServerLifecycle lifecycle = clazz.getAnnotation(HiveServerLifecycle.class);
+        lifecycleStrategy = lifecycle == null ? HiveServerLifecycle.Strategy.TEAR_DOWN : lifecycle.value();
+        setupSnapshots = createSetupSnapshots(clazz.getAnnotation(HiveSetupSnapshot.class));
+        timingReport = createTimingReport(clazz);
     }
 
     /**
@@ -65,18 +95,64 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
         return new StandaloneHiveServerContext(basedir);
     }
 
+    @Override
+    protected List<TestRule> classRules() {
+        List<TestRule> rules = new ArrayList<TestRule>();
+        rules.addAll(super.classRules());
+
+        if (isResetStrategy()) {
+            TestRule hiveServerRule = new TestRule() {
+                @Override
+                public Statement apply(final Statement base, Description description) {
+                    return new Statement() {
+                        @Override
+                        public void evaluate() throws Throwable {
+                            try {
+                                base.evaluate();
+                            } finally {
+                                tearDownClassHiveServer();
+                            }
+                        }
+                    };
+                }
+            };
+            rules.add(hiveServerRule);
+            rules.add(classBaseDir);
+        }
+
+        if (setupSnapshots != null) {
+            rules.add(setupSnapshots);
+        }
+
+        if (timingReport != null) {
+            rules.add(timingReport);
+        }
+
+        return rules;
+    }
+
     @Override
     protected List<TestRule> getTestRules(final Object target) {
 
-        final TemporaryFolder testBaseDir = new TemporaryFolder();
+        final TemporaryFolder testBaseDir = SandboxPool.getInstance().newTemporaryFolder();
 
         TestRule hiveRunnerRule = new TestRule() {
             @Override
-            public Statement apply(final Statement base, Description description) {
+            public Statement apply(final Statement base, final Description description) {
                 return new Statement() {
                     @Override
                     public void evaluate() throws Throwable {
-                        evaluateStatement(target, testBaseDir, base);
+                        String testMethod = description.getMethodName();
+                        PhaseListener phaseListener = timingReport == null ?
+                                PhaseListener.NO_OP : timingReport.listenerFor(testMethod);
+                        long start = System.nanoTime();
+                        try {
+                            evaluateStatement(target, testBaseDir, base, phaseListener);
+                        } finally {
+                            if (timingReport != null) {
+                                timingReport.testFinished(testMethod, System.nanoTime() - start);
+                            }
+                        }
                     }
                 };
             }
@@ -85,7 +161,9 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
         List<TestRule> rules = new ArrayList<TestRule>();
         rules.addAll(super.getTestRules(target));
         rules.add(hiveRunnerRule);
-        rules.add(testBaseDir);
+        if (lifecycleStrategy == HiveServerLifecycle.Strategy.TEAR_DOWN) {
+            rules.add(testBaseDir);
+        }
 
         return rules;
     }
@@ -93,10 +171,11 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
     /**
      * Drives the unit test.
      */
-    private void evaluateStatement(Object target, TemporaryFolder temporaryFolder, Statement base) throws Throwable {
+    private void evaluateStatement(Object target, TemporaryFolder temporaryFolder, Statement base,
+                                   PhaseListener phaseListener) throws Throwable {
         HiveShellContainer container = null;
         try {
-            container = createHiveServerContainer(target, temporaryFolder);
+            container = createHiveServerContainer(target, temporaryFolder, phaseListener);
             base.evaluate();
         } catch (Throwable t) {
             LOGGER.error(t.getMessage(), t);
@@ -111,21 +190,16 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
     /**
      * Traverses the test case annotations. Will inject a HiveShell in the test case that envelopes the HiveServer.
      */
-    private HiveShellContainer createHiveServerContainer(final Object testCase, TemporaryFolder baseDir)
-            throws IOException {
-
-        final HiveServerContainer hiveTestHarness =
-                new HiveServerContainer();
+    private HiveShellContainer createHiveServerContainer(final Object testCase, TemporaryFolder baseDir,
+                                                         PhaseListener phaseListener) throws IOException {
 
         HiveShellBuilder hiveShellBuilder = new HiveShellBuilder();
 
-        HiveShellField shellSetter = loadScriptUnderTest(testCase, hiveShellBuilder);
+        hiveShellBuilder.setLifecycleStrategy(lifecycleStrategy);
 
-        HiveServerContext context = getContext(baseDir);
+        hiveShellBuilder.setSetupSnapshots(setupSnapshots);
 
-        hiveShellBuilder.setContext(context);
-
-        hiveShellBuilder.setHiveServerContainer(hiveTestHarness);
+        HiveShellField shellSetter = loadScriptUnderTest(testCase, hiveShellBuilder);
 
         loadAnnotatedResources(testCase, hiveShellBuilder);
 
@@ -133,6 +207,35 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
 
         loadAnnotatedSetupScripts(testCase, hiveShellBuilder);
 
+        final HiveServerContainer hiveTestHarness;
+
+        HiveServerContext context;
+
+        switch (lifecycleStrategy) {
+            case RESET:
+                if (classHiveServerContainer == null) {
+                    classContext = getContext(classBaseDir);
+                    classHiveServerContainer = new HiveServerContainer();
+                }
+                context = classContext;
+                hiveTestHarness = classHiveServerContainer;
+                break;
+            case POOLED:
+                // Taken last so that a pooled HiveServer is never lost to a failure in the annotation handling
+                hiveTestHarness = getServerPool().take();
+                context = hiveTestHarness.getContext();
+                break;
+            default:
+                context = getContext(baseDir);
+                hiveTestHarness = new HiveServerContainer();
+        }
+
+        hiveTestHarness.setPhaseListener(phaseListener);
+
+        hiveShellBuilder.setContext(context);
+
+        hiveShellBuilder.setHiveServerContainer(hiveTestHarness);
+
         // Build shell
         final HiveShellContainer shell = hiveShellBuilder.buildShell();
 
@@ -140,149 +243,149 @@ public class StandaloneHiveRunner extends BlockJUnit4ClassRunner {
         shellSetter.setShell(shell);
 
         if (shellSetter.isAutoStart()) {
-            shell.start();
+            try {
+                shell.start();
+            } catch (RuntimeException e) {
+                // The shell is not yet handed over to the test, so nobody else will release the HiveServer
+                tearDownAfterFailedStart(shell);
+                throw e;
+            }
         }
 
         return shell;
     }
 
-    private HiveShellField loadScriptUnderTest(final Object testCaseInstance, HiveShellBuilder hiveShellBuilder) {
-        try {
-            Set<Field> fields = ReflectionUtils.getAllFields(
-                    testCaseInstance.getClass(), withAnnotation(HiveSQL.class));
-
-            Preconditions.checkState(fields.size() == 1, "Exact one field should to be annotated with @HiveSQL");
-
-            final Field field = fields.iterator().next();
-            List<Path> scripts = new ArrayList<Path>();
-            HiveSQL annotation = field.getAnnotation(HiveSQL.class);
-            for (String scriptFilePath : annotation.files()) {
-                Path file = Paths.get(Resources.getResource(scriptFilePath).toURI());
-                assertFileExists(file);
-                scripts.add(file);
-            }
-
-            Charset charset = annotation.encoding().equals("") ?
-                    Charset.defaultCharset() : Charset.forName(annotation.encoding());
+    private SetupSnapshots createSetupSnapshots(HiveSetupSnapshot annotation) {
+        if (annotation == null) {
+            return null;
+        }
+        if (annotation.persistent()) {
+            return new SetupSnapshots(Paths.get(
+                    System.getProperty(SetupSnapshots.CACHE_DIR_PROPERTY, SetupSnapshots.DEFAULT_CACHE_DIR)));
+        }
+        return new SetupSnapshots(null);
+    }
 
-            final boolean isAutoStart = annotation.autoStart();
+    private TimingReport createTimingReport(Class<?> clazz) {
+        if (!Boolean.getBoolean(TimingReport.ENABLED_PROPERTY)) {
+            return null;
+        }
+        return new TimingReport(Paths.get(
+                System.getProperty(TimingReport.REPORT_DIR_PROPERTY, TimingReport.DEFAULT_REPORT_DIR)),
+                clazz.getName());
+    }
 
-            hiveShellBuilder.setScriptsUnderTest(scripts, charset);
+    private boolean isResetStrategy() {
+        return lifecycleStrategy == HiveServerLifecycle.Strategy.RESET;
+    }
 
-            return new HiveShellField() {
-                @Override
-                public void setShell(HiveShell shell) {
-                    ReflectionUtils.setField(testCaseInstance, field.getName(), shell);
-                }
+    private HiveServerPool getServerPool() {
+        synchronized (SERVER_POOLS) {
+            HiveServerPool pool = SERVER_POOLS.get(getClass());
+            if (pool == null) {
+                pool = new HiveServerPool(HiveServerPool.getConfiguredSize(), new HiveServerPool.ContextFactory() {
+                    @Override
+                    public HiveServerContext create(TemporaryFolder basedir) {
+                        return getContext(basedir);
+                    }
+                });
+                SERVER_POOLS.put(getClass(), pool);
+            }
+            return pool;
+        }
+    }
 
-                @Override
-                public boolean isAutoStart() {
-                    return isAutoStart;
-                }
-            };
-        } catch (Throwable t) {
-            throw new IllegalArgumentException("Failed to init field annotated with @HiveSQL: " + t.getMessage(), t);
+    private void tearDownClassHiveServer() {
+        if (classHiveServerContainer != null && classHiveServerContainer.isStarted()) {
+            // Not part of the last test method
+            classHiveServerContainer.setPhaseListener(PhaseListener.NO_OP);
+            classHiveServerContainer.tearDown();
         }
+        classHiveServerContainer = null;
+        classContext = null;
     }
 
-    private void assertFileExists(Path file) {
-        Preconditions.checkState(Files.exists(file), "File " + file + " does not exist");
+    private void tearDownAfterFailedStart(HiveShellContainer shell) {
+        try {
+            shell.tearDown();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to tear down HiveShell after failed start: " + e.getMessage(), e);
+        }
     }
 
+    private HiveShellField loadScriptUnderTest(final Object testCaseInstance, HiveShellBuilder hiveShellBuilder) {
+        hiveShellBuilder.setScriptsUnderTest(metadata.getScriptsUnderTest(), metadata.getScriptsCharset());
 
-    private void loadAnnotatedSetupScripts(Object testCase, HiveShellBuilder workFlowBuilder) {
-        Set<Field> setupScriptFields = ReflectionUtils.getAllFields(testCase.getClass(),
-                withAnnotation(HiveSetupScript.class));
+        final TestClassMetadata.AnnotatedField field = metadata.getHiveShellField();
+        final boolean isAutoStart = metadata.isAutoStart();
+        return new HiveShellField() {
+            @Override
+            public void setShell(HiveShell shell) {
+                field.set(testCaseInstance, shell);
+            }
 
-        for (Field setupScriptField : setupScriptFields) {
-            if (isStringField(setupScriptField)) {
-                String script = getMandatoryStringField(testCase, setupScriptField);
+            @Override
+            public boolean isAutoStart() {
+                return isAutoStart;
+            }
+        };
+    }
+
+    private void loadAnnotatedSetupScripts(Object testCase, HiveShellBuilder workFlowBuilder) {
+        for (TestClassMetadata.AnnotatedField setupScriptField : metadata.getSetupScriptFields()) {
+            if (setupScriptField.getType() == TestClassMetadata.FieldType.STRING) {
+                String script = setupScriptField.get(testCase, String.class);
                 workFlowBuilder.addSetupScript(script);
-            } else if (isFileField(setupScriptField) || isPathField(setupScriptField)) {
+            } else {
                 Path path = getMandatoryPathFromField(testCase, setupScriptField);
                 workFlowBuilder.addSetupScript(readAll(path));
-            } else {
-                throw new IllegalArgumentException(
-                        "Field annotated with @HiveSetupScript currently only supports type String, File and Path");
             }
         }
     }
 
     private String readAll(Path path) {
         try {
-            return new String(Files.readAllBytes(path));
+            return ScriptCache.getInstance().read(path, Charset.defaultCharset());
         } catch (IOException e) {
             throw new IllegalStateException("Unable to read " + path + ": " + e.getMessage(), e);
         }
     }
 
     private void loadAnnotatedResources(Object testCase, HiveShellBuilder workFlowBuilder) throws IOException {
-        Set<Field> fields = ReflectionUtils.getAllFields(testCase.getClass(), withAnnotation(HiveResource.class));
-
-        for (Field resourceField : fields) {
+        for (TestClassMetadata.AnnotatedField resourceField : metadata.getResourceFields()) {
 
             HiveResource annotation = resourceField.getAnnotation(HiveResource.class);
             String targetFile = annotation.targetFile();
 
-            if (isStringField(resourceField)) {
-                String data = getMandatoryStringField(testCase, resourceField);
+            if (resourceField.getType() == TestClassMetadata.FieldType.STRING) {
+                String data = resourceField.get(testCase, String.class);
                 workFlowBuilder.addResource(targetFile, data);
-            } else if (isFileField(resourceField) || isPathField(resourceField)) {
+            } else {
                 Path dataFile = getMandatoryPathFromField(testCase, resourceField);
                 workFlowBuilder.addResource(targetFile, dataFile);
-            } else {
-                throw new IllegalArgumentException(
-                        "Fields annotated with @HiveResource currently only supports field type String, File or Path");
             }
         }
     }
 
-    private String getMandatoryStringField(Object testCase, Field resourceField) {
-        return ReflectionUtils.getFieldValue(testCase, resourceField.getName(), String.class);
-    }
-
-    private Path getMandatoryPathFromField(Object testCase, Field resourceField) {
+    private Path getMandatoryPathFromField(Object testCase, TestClassMetadata.AnnotatedField resourceField) {
         Path path;
-        if (isFileField(resourceField)) {
-            File dataFile = ReflectionUtils.getFieldValue(testCase, resourceField.getName(), File.class);
+        if (resourceField.getType() == TestClassMetadata.FieldType.FILE) {
+            File dataFile = resourceField.get(testCase, File.class);
             path = Paths.get(dataFile.toURI());
-        } else if (isPathField(resourceField)) {
-            path = ReflectionUtils.getFieldValue(testCase, resourceField.getName(), Path.class);
         } else {
-            throw new IllegalArgumentException(
-                    "Only Path or File type is allowed on annotated field " + resourceField);
+            path = resourceField.get(testCase, Path.class);
         }
 
         Preconditions.checkArgument(Files.exists(path), "File %s does not exist", path);
         return path;
     }
 
-    private boolean isPathField(Field resourceField) {
-        return resourceField.getType().isAssignableFrom(Path.class);
-    }
-
     private void loadAnnotatedProperties(Object testCase, HiveShellBuilder workFlowBuilder) {
-        for (Field hivePropertyField : ReflectionUtils.getAllFields(testCase.getClass(),
-                withAnnotation(HiveProperties.class))) {
-            Preconditions.checkState(isMapField(hivePropertyField),
-                    "Field annotated with @HiveProperties should be of type Map<String, String>");
-            workFlowBuilder.putAllProperties(
-                    ReflectionUtils.getFieldValue(testCase, hivePropertyField.getName(), Map.class));
+        for (TestClassMetadata.AnnotatedField hivePropertyField : metadata.getPropertiesFields()) {
+            workFlowBuilder.putAllProperties(hivePropertyField.getStringMap(testCase));
         }
     }
 
-    private boolean isStringField(Field setupScriptField) {
-        return setupScriptField.getType().isAssignableFrom(String.class);
-    }
-
-    private boolean isFileField(Field resourceField) {
-        return resourceField.getType().isAssignableFrom(File.class);
-    }
-
-    private boolean isMapField(Field hivePropertyField) {
-        return hivePropertyField.getType().isAssignableFrom(Map.class);
-    }
-
     /**
      * Used as a handle for the HiveShell field in the test case so that we may set it once the
      * HiveShell has been instantiated.
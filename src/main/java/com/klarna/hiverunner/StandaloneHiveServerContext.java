@@ -64,6 +64,13 @@ import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
  */
 class StandaloneHiveServerContext implements HiveServerContext {
 
+    /**
+     * System property enabling {@link #configureInProcessExecution(HiveConf)}.
+     */
+    static final String IN_PROCESS_EXECUTION_PROPERTY = "hiverunner.inprocess.execution";
+
+    private static boolean localModeShimsInstalled = false;
+
     private String metaStorageUrl;
 
     private HiveConf hiveConf = new HiveConf();
@@ -101,6 +108,8 @@ class StandaloneHiveServerContext implements HiveServerContext {
 
         configureJobTrackerMode(hiveConf);
 
+        configureInProcessExecution(hiveConf);
+
         configureSupportConcurrency(hiveConf);
 
         configureFileSystem(basedir, hiveConf);
@@ -109,6 +118,8 @@ class StandaloneHiveServerContext implements HiveServerContext {
 
         configureMapReduceOptimizations(hiveConf);
 
+        configureFetchTaskConversion(hiveConf);
+
         configureCheckForDefaultDb(hiveConf);
 
         configureAssertionStatus(hiveConf);
@@ -141,6 +152,35 @@ class StandaloneHiveServerContext implements HiveServerContext {
     }
 
     protected void configureJobTrackerMode(HiveConf conf) {
+        installLocalModeShims();
+    }
+
+    /**
+     * Cuts the overhead of running MapReduce jobs with test sized inputs within this JVM, if the system property
+     * {@link #IN_PROCESS_EXECUTION_PROPERTY} is true. The local file system is replaced by one that doesn't fork
+     * processes for permissions and file status, and the map side sort buffer that is allocated for every map task
+     * is shrunk from 100 MB.
+     * <p/>
+     * The local file system is then kept out of the JVM wide cache of Hadoop, so that it is not handed to contexts
+     * that use the stock one.
+     */
+    protected void configureInProcessExecution(HiveConf conf) {
+        if (!Boolean.getBoolean(IN_PROCESS_EXECUTION_PROPERTY)) {
+            return;
+        }
+        conf.setClass("fs.file.impl", InProcessLocalFileSystem.class, FileSystem.class);
+        conf.setBoolean("fs.file.impl.disable.cache", true);
+        conf.setInt("io.sort.mb", 10);
+    }
+
+    /**
+     * The shims are static and shared by all HiveServers in the JVM, so they are only replaced once. This keeps
+     * contexts created concurrently from racing each other.
+     */
+    private static synchronized void installLocalModeShims() {
+        if (localModeShimsInstalled) {
+            return;
+        }
         /*
         * Overload shims to make sure that org.apache.hadoop.hive.ql.exec.MapRedTask#runningViaChild
          * validates to false.
@@ -512,6 +552,7 @@ class StandaloneHiveServerContext implements HiveServerContext {
 				return false;
 			}
         });
+        localModeShimsInstalled = true;
     }
 
     protected void configureFileSystem(TemporaryFolder basedir, HiveConf conf) {
@@ -558,6 +599,13 @@ class StandaloneHiveServerContext implements HiveServerContext {
         conf.setBoolVar(HIVESKEWJOIN, false);
     }
 
+    /**
+     * Keeps the Hive default, minimal, so that only selects of whole tables and partitions are answered by a fetch
+     * task. See {@link FetchTaskContext} for more.
+     */
+    protected void configureFetchTaskConversion(HiveConf conf) {
+    }
+
     @Override
     public String getMetaStoreUrl() {
         return metaStorageUrl;
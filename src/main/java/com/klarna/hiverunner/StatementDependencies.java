@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The databases, tables and locations read and written by a DDL statement, as far as can be told from its text.
+ * Two statements may run concurrently unless one writes something the other reads or writes.
+ * <p/>
+ * Only CREATE DATABASE, CREATE TABLE (but not CREATE TABLE AS SELECT), ALTER TABLE, DROP TABLE and LOAD DATA are
+ * analyzed. Any other statement may depend on anything, e.g. USE and SET change the session, and is a barrier
+ * that has to run on its own.
+ */
+final class StatementDependencies {
+
+    private static final String NAME = "(`[^`]+`|\\w+)";
+    private static final String QUALIFIED_NAME = NAME + "(?:\\s*\\.\\s*" + NAME + ")?";
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+
+    private static final Pattern CREATE_DATABASE =
+            Pattern.compile("CREATE\\s+(?:DATABASE|SCHEMA)\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?" + NAME + "(.*)", FLAGS);
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "CREATE\\s+(?:EXTERNAL\\s+)?TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?" + QUALIFIED_NAME + "(.*)", FLAGS);
+    private static final Pattern ALTER_TABLE = Pattern.compile("ALTER\\s+TABLE\\s+" + QUALIFIED_NAME + "(.*)", FLAGS);
+    private static final Pattern DROP_TABLE =
+            Pattern.compile("DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?" + QUALIFIED_NAME + "(.*)", FLAGS);
+    private static final Pattern LOAD_DATA = Pattern.compile("LOAD\\s+DATA\\s+(LOCAL\\s+)?INPATH\\s+('[^']*'|\"[^\"]*\")"
+            + "\\s+(?:OVERWRITE\\s+)?INTO\\s+TABLE\\s+" + QUALIFIED_NAME + "(.*)", FLAGS);
+
+    private static final Pattern AS_SELECT = Pattern.compile("\\bAS\\s*\\(?\\s*(?:SELECT|WITH|FROM)\\b", FLAGS);
+    private static final Pattern LIKE = Pattern.compile("^\\s*LIKE\\s+" + QUALIFIED_NAME, FLAGS);
+    private static final Pattern RENAME = Pattern.compile("\\bRENAME\\s+TO\\s+" + QUALIFIED_NAME, FLAGS);
+    private static final Pattern LOCATION = Pattern.compile("\\bLOCATION\\s+('[^']*'|\"[^\"]*\")", FLAGS);
+    private static final Pattern LINE_COMMENT = Pattern.compile("^\\s*--.*$", Pattern.MULTILINE);
+
+    private final Set<String> reads = new HashSet<>();
+    private final Set<String> writes = new HashSet<>();
+    private final Set<String> locations = new HashSet<>();
+
+    private StatementDependencies() {
+    }
+
+    /**
+     * @param statement       A single statement with all variables expanded
+     * @param currentDatabase The database of unqualified table names
+     * @return null if the statement is a barrier
+     */
+    static StatementDependencies analyze(String statement, String currentDatabase) {
+        String text = LINE_COMMENT.matcher(statement).replaceAll("").trim();
+        StatementDependencies dependencies = new StatementDependencies();
+
+        Matcher matcher = CREATE_DATABASE.matcher(text);
+        if (matcher.matches()) {
+            dependencies.writes.add(database(matcher.group(1)));
+            dependencies.addLocations(matcher.group(2));
+            return dependencies;
+        }
+
+        matcher = CREATE_TABLE.matcher(text);
+        if (matcher.matches()) {
+            String rest = matcher.group(3);
+            if (AS_SELECT.matcher(rest).find()) {
+                return null;
+            }
+            dependencies.addTable(matcher, 1, currentDatabase, true);
+            Matcher like = LIKE.matcher(rest);
+            if (like.find()) {
+                dependencies.addTable(like, 1, currentDatabase, false);
+            }
+            dependencies.addLocations(rest);
+            return dependencies;
+        }
+
+        matcher = ALTER_TABLE.matcher(text);
+        if (matcher.matches()) {
+            String rest = matcher.group(3);
+            dependencies.addTable(matcher, 1, currentDatabase, true);
+            Matcher rename = RENAME.matcher(rest);
+            if (rename.find()) {
+                dependencies.addTable(rename, 1, currentDatabase, true);
+            }
+            dependencies.addLocations(rest);
+            return dependencies;
+        }
+
+        matcher = DROP_TABLE.matcher(text);
+        if (matcher.matches()) {
+            dependencies.addTable(matcher, 1, currentDatabase, true);
+            return dependencies;
+        }
+
+        matcher = LOAD_DATA.matcher(text);
+        if (matcher.matches()) {
+            dependencies.addTable(matcher, 3, currentDatabase, true);
+            // Files loaded from the file system rather than copied from the local disk are moved
+            if (matcher.group(1) == null) {
+                dependencies.locations.add(normalizeLocation(unquote(matcher.group(2))));
+            }
+            return dependencies;
+        }
+
+        return null;
+    }
+
+    /**
+     * True if the statements may not run concurrently.
+     */
+    boolean conflictsWith(StatementDependencies other) {
+        if (!Collections.disjoint(writes, other.writes) || !Collections.disjoint(writes, other.reads)
+                || !Collections.disjoint(reads, other.writes)) {
+            return true;
+        }
+        for (String location : locations) {
+            for (String otherLocation : other.locations) {
+                if (isSameOrNested(location, otherLocation) || isSameOrNested(otherLocation, location)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addTable(Matcher matcher, int group, String currentDatabase, boolean write) {
+        String database = matcher.group(group + 1) == null ? currentDatabase : unquote(matcher.group(group));
+        String table = matcher.group(group + 1) == null ? matcher.group(group) : matcher.group(group + 1);
+        reads.add(database(database));
+        (write ? writes : reads).add("table:" + normalize(database) + "." + normalize(unquote(table)));
+    }
+
+    private void addLocations(String text) {
+        Matcher location = LOCATION.matcher(text);
+        while (location.find()) {
+            locations.add(normalizeLocation(unquote(location.group(1))));
+        }
+    }
+
+    private static String database(String name) {
+        return "database:" + normalize(unquote(name));
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static String unquote(String name) {
+        if (name.length() >= 2 && "`'\"".indexOf(name.charAt(0)) >= 0) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * The path part of the location, so that e.g. file:///tmp/foo and /tmp/foo/ are the same.
+     */
+    private static String normalizeLocation(String location) {
+        String path = location.replaceFirst("^[a-zA-Z][a-zA-Z0-9+.-]+:", "").replaceFirst("^/+", "/");
+        return path.endsWith("/") && path.length() > 1 ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static boolean isSameOrNested(String location, String parent) {
+        return location.equals(parent) || location.startsWith(parent + "/");
+    }
+
+    @Override
+    public String toString() {
+        return "reads " + reads + ", writes " + writes + ", locations " + locations;
+    }
+}
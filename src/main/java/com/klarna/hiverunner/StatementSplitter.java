@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits hive scripts into statements in a single pass.
+ * <p/>
+ * Statements are delimited by ';' unless it is escaped with a backslash, quoted with ', " or ` or part of a
+ * -- comment. Backslash escapes are honoured within ' and " quotes. Leading whitespace and comments are dropped,
+ * and so are statements consisting of nothing but whitespace and comments.
+ */
+final class StatementSplitter {
+
+    private StatementSplitter() {
+    }
+
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        int length = script.length();
+        // Start of the current statement or -1 if only whitespace and comments were seen since the last delimiter
+        int start = -1;
+        char quote = 0;
+        boolean comment = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = script.charAt(i);
+            if (comment) {
+                if (c == '\n') {
+                    comment = false;
+                }
+            } else if (quote != 0) {
+                if (c == '\\' && quote != '`') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == ';') {
+                if (start != -1) {
+                    statements.add(script.substring(start, i));
+                    start = -1;
+                }
+            } else if (c == '-' && i + 1 < length && script.charAt(i + 1) == '-') {
+                comment = true;
+                i++;
+            } else if (!Character.isWhitespace(c)) {
+                if (start == -1) {
+                    start = i;
+                }
+                if (c == '\\') {
+                    i++;
+                } else if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                }
+            }
+        }
+
+        if (start != -1) {
+            statements.add(script.substring(start));
+        }
+        return statements;
+    }
+}
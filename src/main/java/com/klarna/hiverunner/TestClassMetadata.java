@@ -0,0 +1,301 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.io.Resources;
+import com.klarna.hiverunner.annotations.HiveProperties;
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import com.klarna.reflection.ReflectionUtils;
+import org.junit.runners.model.InitializationError;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.reflections.ReflectionUtils.withAnnotation;
+
+/**
+ * The HiveRunner annotated fields of a test class, looked up and validated once per class rather than for each
+ * test method. The fields are read and set through method handles bound when the class is loaded.
+ */
+final class TestClassMetadata {
+
+    /**
+     * The types of field supported by the HiveRunner annotations.
+     */
+    enum FieldType {
+        STRING, FILE, PATH, MAP, UNSUPPORTED;
+
+        private static FieldType of(Field field) {
+            Class<?> type = field.getType();
+            if (type.isAssignableFrom(String.class)) {
+                return STRING;
+            } else if (type.isAssignableFrom(File.class)) {
+                return FILE;
+            } else if (type.isAssignableFrom(Path.class)) {
+                return PATH;
+            } else if (type.isAssignableFrom(Map.class)) {
+                return MAP;
+            }
+            return UNSUPPORTED;
+        }
+    }
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final AnnotatedField hiveShellField;
+    private final List<Path> scriptsUnderTest;
+    private final Charset scriptsCharset;
+    private final List<AnnotatedField> setupScriptFields;
+    private final List<AnnotatedField> resourceFields;
+    private final List<AnnotatedField> propertiesFields;
+
+    private TestClassMetadata(AnnotatedField hiveShellField, List<Path> scriptsUnderTest, Charset scriptsCharset,
+                              List<AnnotatedField> setupScriptFields, List<AnnotatedField> resourceFields,
+                              List<AnnotatedField> propertiesFields) {
+        this.hiveShellField = hiveShellField;
+        this.scriptsUnderTest = Collections.unmodifiableList(scriptsUnderTest);
+        this.scriptsCharset = scriptsCharset;
+        this.setupScriptFields = Collections.unmodifiableList(setupScriptFields);
+        this.resourceFields = Collections.unmodifiableList(resourceFields);
+        this.propertiesFields = Collections.unmodifiableList(propertiesFields);
+    }
+
+    /**
+     * Looks up the annotated fields of the test class and its super classes.
+     *
+     * @throws InitializationError listing all misplaced annotations and missing scripts
+     */
+    static TestClassMetadata create(Class<?> testClass) throws InitializationError {
+        List<Throwable> errors = new ArrayList<>();
+
+        AnnotatedField hiveShellField = null;
+        List<Path> scripts = new ArrayList<>();
+        Charset charset = Charset.defaultCharset();
+        List<AnnotatedField> hiveSqlFields = findFields(testClass, HiveSQL.class, errors);
+        if (hiveSqlFields.size() != 1) {
+            errors.add(new IllegalArgumentException(
+                    "Exact one field should to be annotated with @HiveSQL, found " + hiveSqlFields.size()));
+        } else if (hiveSqlFields.get(0).setter == null) {
+            errors.add(new IllegalArgumentException(
+                    "Field " + hiveSqlFields.get(0).getName() + " annotated with @HiveSQL must not be final"));
+        } else {
+            hiveShellField = hiveSqlFields.get(0);
+            HiveSQL annotation = hiveShellField.getAnnotation(HiveSQL.class);
+            for (String scriptFilePath : annotation.files()) {
+                try {
+                    Path file = Paths.get(Resources.getResource(scriptFilePath).toURI());
+                    if (!Files.exists(file)) {
+                        errors.add(new IllegalArgumentException("File " + file + " does not exist"));
+                    }
+                    scripts.add(file);
+                } catch (Exception e) {
+                    errors.add(new IllegalArgumentException(
+                            "Failed to init field annotated with @HiveSQL: " + e.getMessage(), e));
+                }
+            }
+            if (!annotation.encoding().equals("")) {
+                try {
+                    charset = Charset.forName(annotation.encoding());
+                } catch (IllegalArgumentException e) {
+                    errors.add(new IllegalArgumentException(
+                            "Unsupported encoding of @HiveSQL files: " + annotation.encoding(), e));
+                }
+            }
+        }
+
+        List<AnnotatedField> setupScriptFields = findFields(testClass, HiveSetupScript.class, errors);
+        for (AnnotatedField field : setupScriptFields) {
+            if (!field.isStringFileOrPath()) {
+                errors.add(new IllegalArgumentException("Field " + field.getName()
+                        + " annotated with @HiveSetupScript currently only supports type String, File and Path"));
+            }
+        }
+
+        List<AnnotatedField> resourceFields = findFields(testClass, HiveResource.class, errors);
+        for (AnnotatedField field : resourceFields) {
+            if (!field.isStringFileOrPath()) {
+                errors.add(new IllegalArgumentException("Field " + field.getName()
+                        + " annotated with @HiveResource currently only supports field type String, File or Path"));
+            }
+        }
+
+        List<AnnotatedField> propertiesFields = findFields(testClass, HiveProperties.class, errors);
+        for (AnnotatedField field : propertiesFields) {
+            if (field.getType() != FieldType.MAP) {
+                errors.add(new IllegalArgumentException("Field " + field.getName()
+                        + " annotated with @HiveProperties should be of type Map<String, String>"));
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            throw new InitializationError(errors);
+        }
+        return new TestClassMetadata(hiveShellField, scripts, charset, setupScriptFields, resourceFields,
+                propertiesFields);
+    }
+
+    private static List<AnnotatedField> findFields(Class<?> testClass, Class<? extends Annotation> annotation,
+                                                   List<Throwable> errors) {
+        Set<Field> fields = ReflectionUtils.getAllFields(testClass, withAnnotation(annotation));
+        List<AnnotatedField> result = new ArrayList<>();
+        for (Field field : fields) {
+            try {
+                result.add(new AnnotatedField(field));
+            } catch (IllegalAccessException e) {
+                errors.add(new IllegalArgumentException("Failed to access field " + field.getName()
+                        + " annotated with @" + annotation.getSimpleName() + ": " + e.getMessage(), e));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The field annotated with {@link HiveSQL}.
+     */
+    AnnotatedField getHiveShellField() {
+        return hiveShellField;
+    }
+
+    boolean isAutoStart() {
+        return hiveShellField.getAnnotation(HiveSQL.class).autoStart();
+    }
+
+    /**
+     * The resolved {@link HiveSQL#files()}.
+     */
+    List<Path> getScriptsUnderTest() {
+        return scriptsUnderTest;
+    }
+
+    Charset getScriptsCharset() {
+        return scriptsCharset;
+    }
+
+    List<AnnotatedField> getSetupScriptFields() {
+        return setupScriptFields;
+    }
+
+    List<AnnotatedField> getResourceFields() {
+        return resourceFields;
+    }
+
+    List<AnnotatedField> getPropertiesFields() {
+        return propertiesFields;
+    }
+
+    /**
+     * An annotated field with its getter and setter bound as method handles.
+     */
+    static final class AnnotatedField {
+
+        private final Field field;
+        private final FieldType type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private AnnotatedField(Field field) throws IllegalAccessException {
+            this.field = field;
+            this.type = FieldType.of(field);
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.getter = bind(lookup.unreflectGetter(field), GETTER_TYPE);
+            // Only the HiveShell is injected, the other fields may well be final
+            this.setter = Modifier.isFinal(field.getModifiers()) ?
+                    null : bind(lookup.unreflectSetter(field), SETTER_TYPE);
+        }
+
+        private MethodHandle bind(MethodHandle handle, MethodType type) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle.asType(type);
+        }
+
+        String getName() {
+            return field.getName();
+        }
+
+        FieldType getType() {
+            return type;
+        }
+
+        boolean isStringFileOrPath() {
+            return type == FieldType.STRING || type == FieldType.FILE || type == FieldType.PATH;
+        }
+
+        <A extends Annotation> A getAnnotation(Class<A> annotation) {
+            return field.getAnnotation(annotation);
+        }
+
+        <T> T get(Object testCase, Class<T> valueType) {
+            try {
+                return valueType.cast((Object) getter.invokeExact(testCase));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                        "Failed to get value of field '" + getName() + "' for object '" + testCase + "': "
+                                + e.getMessage(), e);
+            } catch (Throwable t) {
+                throw new IllegalStateException(
+                        "Failed to get value of field '" + getName() + "' for object '" + testCase + "': "
+                                + t.getMessage(), t);
+            }
+        }
+
+        Map<String, String> getStringMap(Object testCase) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> map = get(testCase, Map.class);
+            return map;
+        }
+
+        void set(Object testCase, Object value) {
+            if (setter == null) {
+                throw new IllegalStateException("Failed to set final field '" + getName() + "' on '" + testCase + "'");
+            }
+            try {
+                setter.invokeExact(testCase, value);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                        "Failed to set field '" + getName() + "' on '" + testCase + "': " + e.getMessage(), e);
+            } catch (Throwable t) {
+                throw new IllegalStateException(
+                        "Failed to set field '" + getName() + "' on '" + testCase + "': " + t.getMessage(), t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return field.toString();
+        }
+    }
+}
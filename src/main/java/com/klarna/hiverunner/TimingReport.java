@@ -0,0 +1,384 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Preconditions;
+import org.junit.rules.ExternalResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the phase timings of all test methods of a test class and writes them as CSV and JSON to
+ * <code>&lt;report dir&gt;/&lt;test class&gt;.csv</code> and <code>.json</code> once the class has run.
+ * <p/>
+ * Reports are written when the system property <code>hiverunner.report</code> is true, to the directory set by
+ * <code>hiverunner.report.dir</code> (default target/hiverunner-report). Timings are aggregated per test method and
+ * phase into count, total and max time, along with the detail of the slowest occurrence, e.g. the slowest statement.
+ * <p/>
+ * The total time and phase totals of each test method are also merged into the suite report
+ * <code>&lt;report dir&gt;/hiverunner-suite.csv</code> and <code>.json</code>, sorted by total time with the
+ * slowest test method first. The suite report is shared by all test classes and JVMs writing to the same report
+ * dir, and keeps the test methods of classes that are not run again until the report dir is deleted.
+ */
+public class TimingReport extends ExternalResource {
+
+    /**
+     * System property enabling the report.
+     */
+    public static final String ENABLED_PROPERTY = "hiverunner.report";
+
+    /**
+     * System property controlling the directory of the reports.
+     */
+    public static final String REPORT_DIR_PROPERTY = "hiverunner.report.dir";
+
+    public static final String DEFAULT_REPORT_DIR = "target/hiverunner-report";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingReport.class);
+
+    private static final int MAX_DETAIL_LENGTH = 200;
+
+    static final String SUITE_REPORT = "hiverunner-suite";
+
+    private static final String SUITE_CSV_HEADER = suiteCsvHeader();
+
+    private final Path reportDir;
+
+    private final String testClass;
+
+    private final Queue<TestTimings> tests = new ConcurrentLinkedQueue<>();
+
+    public TimingReport(Path reportDir, String testClass) {
+        this.reportDir = reportDir;
+        this.testClass = testClass;
+    }
+
+    /**
+     * Returns a listener collecting the timings of the given test method.
+     */
+    public PhaseListener listenerFor(String testMethod) {
+        TestTimings timings = new TestTimings(testMethod);
+        tests.add(timings);
+        return timings;
+    }
+
+    private static String suiteCsvHeader() {
+        StringBuilder header = new StringBuilder("test_class,test_method,total_ms");
+        for (PhaseListener.Phase phase : PhaseListener.Phase.values()) {
+            header.append(',').append(phase.name().toLowerCase(Locale.ROOT)).append("_ms");
+        }
+        return header.toString();
+    }
+
+    /**
+     * Records the wall clock time of the given test method, including the start and tear down of its HiveServer.
+     */
+    public void testFinished(String testMethod, long nanos) {
+        for (TestTimings test : tests) {
+            if (test.testMethod.equals(testMethod)) {
+                test.totalNanos = nanos;
+            }
+        }
+    }
+
+    @Override
+    protected void after() {
+        try {
+            Files.createDirectories(reportDir);
+            writeCsv(reportDir.resolve(testClass + ".csv"));
+            writeJson(reportDir.resolve(testClass + ".json"));
+            mergeIntoSuiteReport();
+            LOGGER.info("Wrote HiveRunner timing report of " + testClass + " to " + reportDir);
+        } catch (IOException e) {
+            // A missing report should not fail the tests
+            LOGGER.warn("Failed to write HiveRunner timing report to " + reportDir + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces the rows of this test class in the suite report. Test classes may finish concurrently in this JVM
+     * as well as in other surefire forks, hence the lock on the class and on a lock file in the report dir.
+     */
+    private void mergeIntoSuiteReport() throws IOException {
+        synchronized (TimingReport.class) {
+            try (FileChannel lockFile = FileChannel.open(reportDir.resolve(SUITE_REPORT + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = lockFile.lock()) {
+                Path csv = reportDir.resolve(SUITE_REPORT + ".csv");
+                List<SuiteRow> rows = new ArrayList<>();
+                for (SuiteRow row : readSuiteCsv(csv)) {
+                    if (!row.testClass.equals(testClass)) {
+                        rows.add(row);
+                    }
+                }
+                for (TestTimings test : tests) {
+                    rows.add(new SuiteRow(testClass, test));
+                }
+                Collections.sort(rows);
+                writeSuiteCsv(csv, rows);
+                writeSuiteJson(reportDir.resolve(SUITE_REPORT + ".json"), rows);
+            }
+        }
+    }
+
+    private static List<SuiteRow> readSuiteCsv(Path file) throws IOException {
+        List<SuiteRow> rows = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return rows;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(SUITE_CSV_HEADER)) {
+            LOGGER.warn("Replacing suite report " + file + " of an unknown format");
+            return rows;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> columns = parseCsv(line);
+            String[] millis = columns.subList(2, columns.size()).toArray(new String[columns.size() - 2]);
+            rows.add(new SuiteRow(columns.get(0), columns.get(1), millis));
+        }
+        return rows;
+    }
+
+    private static void writeSuiteCsv(Path file, List<SuiteRow> rows) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(SUITE_CSV_HEADER + "\n");
+            for (SuiteRow row : rows) {
+                out.write(csv(row.testClass) + "," + csv(row.testMethod));
+                for (String millis : row.millis) {
+                    out.write("," + millis);
+                }
+                out.write("\n");
+            }
+        }
+    }
+
+    private static void writeSuiteJson(Path file, List<SuiteRow> rows) throws IOException {
+        PhaseListener.Phase[] phases = PhaseListener.Phase.values();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"tests\":[");
+            String testSeparator = "";
+            for (SuiteRow row : rows) {
+                out.write(testSeparator + "\n  {\"testClass\":" + json(row.testClass) + ",\"testMethod\":"
+                        + json(row.testMethod) + ",\"totalMillis\":" + row.millis[0] + ",\"phases\":{");
+                for (int i = 0; i < phases.length; i++) {
+                    out.write((i == 0 ? "" : ",") + "\"" + phases[i] + "\":" + row.millis[i + 1]);
+                }
+                out.write("}}");
+                testSeparator = ",";
+            }
+            out.write("]}\n");
+        }
+    }
+
+    /**
+     * Splits a line written by {@link #csv(String)} and {@link #millis(long)}.
+     */
+    private static List<String> parseCsv(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private void writeCsv(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("test_class,test_method,phase,count,total_ms,max_ms,slowest\n");
+            for (TestTimings test : tests) {
+                for (Map.Entry<PhaseListener.Phase, PhaseTimings> phase : test.getPhases().entrySet()) {
+                    PhaseTimings timings = phase.getValue();
+                    out.write(csv(testClass) + "," + csv(test.testMethod) + "," + phase.getKey() + ","
+                            + timings.count + "," + millis(timings.totalNanos) + "," + millis(timings.maxNanos) + ","
+                            + csv(timings.slowest) + "\n");
+                }
+            }
+        }
+    }
+
+    private void writeJson(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\"testClass\":" + json(testClass) + ",\"tests\":[");
+            String testSeparator = "";
+            for (TestTimings test : tests) {
+                out.write(testSeparator + "\n  {\"testMethod\":" + json(test.testMethod) + ",\"phases\":[");
+                String phaseSeparator = "";
+                for (Map.Entry<PhaseListener.Phase, PhaseTimings> phase : test.getPhases().entrySet()) {
+                    PhaseTimings timings = phase.getValue();
+                    out.write(phaseSeparator + "\n    {\"phase\":\"" + phase.getKey() + "\",\"count\":"
+                            + timings.count + ",\"totalMillis\":" + millis(timings.totalNanos) + ",\"maxMillis\":"
+                            + millis(timings.maxNanos) + ",\"slowest\":" + json(timings.slowest) + "}");
+                    phaseSeparator = ",";
+                }
+                out.write("]}");
+                testSeparator = ",";
+            }
+            out.write("]}\n");
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class TestTimings implements PhaseListener {
+        private final String testMethod;
+        private final Map<Phase, PhaseTimings> phases = new EnumMap<>(Phase.class);
+        private volatile long totalNanos;
+
+        TestTimings(String testMethod) {
+            this.testMethod = testMethod;
+        }
+
+        @Override
+        public synchronized void phaseFinished(Phase phase, String detail, long nanos) {
+            PhaseTimings timings = phases.get(phase);
+            if (timings == null) {
+                timings = new PhaseTimings();
+                phases.put(phase, timings);
+            }
+            timings.add(detail, nanos);
+        }
+
+        synchronized Map<Phase, PhaseTimings> getPhases() {
+            return new EnumMap<>(phases);
+        }
+    }
+
+    /**
+     * A test method in the suite report, with its total time and the total time of each phase.
+     */
+    private static final class SuiteRow implements Comparable<SuiteRow> {
+        private final String testClass;
+        private final String testMethod;
+        /**
+         * Total time of the test method followed by the total time of each phase, in milliseconds.
+         */
+        private final String[] millis;
+
+        SuiteRow(String testClass, String testMethod, String[] millis) {
+            Preconditions.checkArgument(millis.length == PhaseListener.Phase.values().length + 1,
+                    "Unexpected number of timings for %s.%s: %s", testClass, testMethod, millis.length);
+            this.testClass = testClass;
+            this.testMethod = testMethod;
+            this.millis = millis;
+        }
+
+        SuiteRow(String testClass, TestTimings test) {
+            this(testClass, test.testMethod, toMillis(test));
+        }
+
+        private static String[] toMillis(TestTimings test) {
+            PhaseListener.Phase[] phases = PhaseListener.Phase.values();
+            Map<PhaseListener.Phase, PhaseTimings> timings = test.getPhases();
+            String[] millis = new String[phases.length + 1];
+            millis[0] = millis(test.totalNanos);
+            for (int i = 0; i < phases.length; i++) {
+                PhaseTimings phase = timings.get(phases[i]);
+                millis[i + 1] = millis(phase == null ? 0 : phase.totalNanos);
+            }
+            return millis;
+        }
+
+        @Override
+        public int compareTo(SuiteRow other) {
+            return Double.compare(Double.parseDouble(other.millis[0]), Double.parseDouble(millis[0]));
+        }
+    }
+
+    private static final class PhaseTimings {
+        private int count;
+        private long totalNanos;
+        private long maxNanos = -1;
+        private String slowest;
+
+        void add(String detail, long nanos) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+                slowest = detail == null ? null : singleLine(detail);
+            }
+        }
+
+        private static String singleLine(String detail) {
+            String line = detail.trim().replaceAll("\\s+", " ");
+            return line.length() > MAX_DETAIL_LENGTH ? line.substring(0, MAX_DETAIL_LENGTH) + "..." : line;
+        }
+    }
+}
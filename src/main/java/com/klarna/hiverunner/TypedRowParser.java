@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Schema;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the tab delimited rows fetched from the HiveServer into values typed after the result schema.
+ * <p/>
+ * Primitive columns are parsed into the matching boxed Java type, decimal into BigDecimal, date and timestamp into
+ * their java.sql counterparts. Strings and complex types are kept as strings. NULL is parsed to null for all but
+ * string columns, since the HiveServer prints null and the string 'NULL' alike.
+ * <p/>
+ * String values may contain tabs themselves. The fields beyond the column count are given back to the first string
+ * column, which is exact as long as the row has at most one string column holding tabs.
+ */
+class TypedRowParser {
+
+    private static final String NULL = "NULL";
+
+    private enum ColumnType {
+        TINYINT, SMALLINT, INT, BIGINT, FLOAT, DOUBLE, BOOLEAN, DECIMAL, DATE, TIMESTAMP, STRING
+    }
+
+    private static final Joiner TAB_JOINER = Joiner.on('\t');
+
+    private final ColumnType[] columnTypes;
+    private final int firstStringColumn;
+
+    TypedRowParser(Schema schema) {
+        List<FieldSchema> fields = schema.getFieldSchemas();
+        columnTypes = new ColumnType[fields == null ? 0 : fields.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = toColumnType(fields.get(i).getType());
+        }
+        firstStringColumn = Arrays.asList(columnTypes).indexOf(ColumnType.STRING);
+    }
+
+    Object[] parse(String row) {
+        String[] values = split(row);
+        Object[] typed = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boolean isNull = columnTypes[i] != ColumnType.STRING && NULL.equals(values[i]);
+            typed[i] = isNull ? null : parseValue(columnTypes[i], values[i]);
+        }
+        return typed;
+    }
+
+    private String[] split(String row) {
+        if (columnTypes.length == 1) {
+            return new String[]{row};
+        }
+        String[] fields = row.split("\t", -1);
+        int extraFields = fields.length - columnTypes.length;
+        if (extraFields == 0) {
+            return fields;
+        }
+        Preconditions.checkState(extraFields > 0 && firstStringColumn != -1,
+                "Expected %s columns but got %s in row '%s'", columnTypes.length, fields.length, row);
+
+        String[] values = new String[columnTypes.length];
+        System.arraycopy(fields, 0, values, 0, firstStringColumn);
+        values[firstStringColumn] = TAB_JOINER.join(
+                Arrays.asList(fields).subList(firstStringColumn, firstStringColumn + extraFields + 1));
+        System.arraycopy(fields, firstStringColumn + extraFields + 1, values, firstStringColumn + 1,
+                columnTypes.length - firstStringColumn - 1);
+        return values;
+    }
+
+    private static Object parseValue(ColumnType type, String value) {
+        switch (type) {
+            case TINYINT:
+                return Byte.valueOf(value);
+            case SMALLINT:
+                return Short.valueOf(value);
+            case INT:
+                return Integer.valueOf(value);
+            case BIGINT:
+                return Long.valueOf(value);
+            case FLOAT:
+                return Float.valueOf(value);
+            case DOUBLE:
+                return Double.valueOf(value);
+            case BOOLEAN:
+                return Boolean.valueOf(value);
+            case DECIMAL:
+                return new BigDecimal(value);
+            case DATE:
+                return Date.valueOf(value);
+            case TIMESTAMP:
+                return Timestamp.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    private static ColumnType toColumnType(String hiveType) {
+        // Strip type parameters as in decimal(10,2) or varchar(10)
+        int parameters = hiveType.indexOf('(');
+        String name = (parameters == -1 ? hiveType : hiveType.substring(0, parameters)).trim().toUpperCase();
+        try {
+            return ColumnType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            // varchar, char, binary and complex types
+            return ColumnType.STRING;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a test class to control how the HiveServer is managed between test methods.
+ * <p/>
+ * Test classes without this annotation get a fresh HiveServer for each test method.
+ * <p/>
+ * Please refer to {@link com.klarna.hiverunner.ResetBetweenTestMethodsTest} for usage details.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface HiveServerLifecycle {
+
+    /**
+     * The strategy used between test methods. Defaults to {@link Strategy#TEAR_DOWN}
+     */
+    Strategy value() default Strategy.TEAR_DOWN;
+
+    enum Strategy {
+        /**
+         * Start a new HiveServer for each test method and tear it down afterwards. This gives full isolation
+         * between test methods and is the mode to fall back to when debugging leakage.
+         */
+        TEAR_DOWN,
+
+        /**
+         * Start one HiveServer per test class and reset it after each test method. The reset drops all
+         * databases and tables, restores the HiveConf and removes all files created in the test sand box.
+         * Only the first test method pays the startup cost of the HiveServer.
+         */
+        RESET,
+
+        /**
+         * Take an already started HiveServer from a pool for each test method and tear it down afterwards. The
+         * pool is shared by all test classes in the JVM and starts replacements in a background thread, which
+         * hides the startup cost when test methods run back to back in a reused fork. The number of HiveServers
+         * kept warm is set by the system property <code>hiverunner.pool.size</code> (default 2).
+         * <p/>
+         * Note that test case properties are merged with the HiveConf after the pooled HiveServer was started.
+         * Properties read when the HiveServer starts, i.e. <code>javax.jdo.*</code>, <code>datanucleus.*</code>,
+         * <code>hive.metastore.*</code> and <code>fs.*</code>, would have no effect and fail the test method.
+         */
+        POOLED
+    }
+}
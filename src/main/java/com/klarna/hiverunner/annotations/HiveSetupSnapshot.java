@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a test class to only run the setup of the HiveShell once for all test methods with identical setup.
+ * <p/>
+ * After the setup scripts, resources and scripts under test of the first test method are executed, the meta
+ * store, the test sand box and the session state are captured in a snapshot. Following test methods with the same
+ * properties, setup scripts, resources and scripts under test start from a copy of that snapshot instead.
+ * <p/>
+ * State outside of the meta store, the sand box, the HiveConf, hive variables and the current database is not
+ * part of the snapshot.
+ * <p/>
+ * Please refer to {@link com.klarna.hiverunner.SetupSnapshotTest} for usage details.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface HiveSetupSnapshot {
+
+    /**
+     * Keep the snapshots between test runs in the directory set by the system property
+     * <code>hiverunner.cache.dir</code> (default target/hiverunner-cache). A snapshot is only reused for the same
+     * properties, setup scripts, resources, scripts under test, context and Hive version. Changes to code on the
+     * class path, e.g. UDFs or SerDes used by the setup, are not detected. Clean the directory in that case.
+     */
+    boolean persistent() default false;
+}
@@ -16,55 +16,98 @@
 
 package com.klarna.hiverunner.builder;
 
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
- * Representation of a resource configuration
+ * Representation of a resource configuration.
+ * <p/>
+ * Resources backed by a file are kept as a path and copied to the target file on materialization without being
+ * read into memory. String data and data written to the output stream is buffered, see
+ * {@link ResourceOutputStream}.
  */
 class HiveResource {
     private final String targetFile;
-    private final ByteArrayOutputStream byteArrayOutputStream;
+    private final Path dataFile;
+    private final ResourceOutputStream outputStream;
 
-    HiveResource(String targetFile) throws IOException {
-        this(targetFile, new ByteArrayOutputStream());
+    HiveResource(String targetFile, ResourceOutputStream outputStream) {
+        this(targetFile, null, outputStream);
     }
 
-    HiveResource(String targetFile, Path dataFile) throws IOException {
-        this(targetFile, createOutputStream(Files.readAllBytes(dataFile)));
+    HiveResource(String targetFile, Path dataFile) {
+        this(targetFile, dataFile, null);
     }
 
     HiveResource(String targetFile, String data) throws IOException {
-        this(targetFile, createOutputStream(data.getBytes()));
+        this(targetFile, null, createOutputStream(data.getBytes()));
     }
 
-    private HiveResource(String targetFile, ByteArrayOutputStream byteArrayOutputStream) {
+    private HiveResource(String targetFile, Path dataFile, ResourceOutputStream outputStream) {
         this.targetFile = targetFile;
-        this.byteArrayOutputStream = byteArrayOutputStream;
+        this.dataFile = dataFile;
+        this.outputStream = outputStream;
     }
 
-    private static ByteArrayOutputStream createOutputStream(byte[] data) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        baos.write(data);
-        baos.close();
-        return baos;
+    private static ResourceOutputStream createOutputStream(byte[] data) throws IOException {
+        ResourceOutputStream out = new ResourceOutputStream(null, Long.MAX_VALUE);
+        out.write(data);
+        out.close();
+        return out;
     }
 
     String getTargetFile() {
         return targetFile;
     }
 
+    /**
+     * Writes the data of this resource to the given file, which must not exist.
+     */
+    void materialize(Path target) throws IOException {
+        if (dataFile != null) {
+            Files.copy(dataFile, target);
+        } else {
+            outputStream.materialize(target);
+        }
+    }
+
+    /**
+     * Writes the data of this resource to the given file of a Hadoop file system, which must not exist.
+     */
+    void materialize(org.apache.hadoop.fs.Path target, Configuration conf) throws IOException {
+        FileSystem fileSystem = target.getFileSystem(conf);
+        try (InputStream in = openData(); OutputStream out = fileSystem.create(target, false)) {
+            ByteStreams.copy(in, out);
+        }
+    }
+
+    /**
+     * Opens the data of this resource for reading. No more data may be written to the output stream afterwards.
+     */
+    InputStream openData() throws IOException {
+        return dataFile != null ? Files.newInputStream(dataFile) : outputStream.openData();
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this);
     }
 
-    public ByteArrayOutputStream getOutputStream() {
-        return byteArrayOutputStream;
+    /**
+     * @return The stream receiving the data of this resource. Only available for resources not backed by a file.
+     */
+    public OutputStream getOutputStream() {
+        Preconditions.checkState(dataFile == null, "Resource %s is backed by file %s", targetFile, dataFile);
+        return outputStream;
     }
 
 }
@@ -17,28 +17,38 @@
 package com.klarna.hiverunner.builder;
 
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.klarna.hiverunner.ExplainPlan;
 import com.klarna.hiverunner.HiveServerContainer;
 import com.klarna.hiverunner.HiveServerContext;
 import com.klarna.hiverunner.HiveShell;
+import com.klarna.hiverunner.InsertIntoTable;
+import com.klarna.hiverunner.PhaseListener;
+import com.klarna.hiverunner.QueryProfile;
+import com.klarna.hiverunner.ResultCursor;
+import com.klarna.hiverunner.ScriptCache;
+import com.klarna.hiverunner.SetupSnapshots;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.parse.VariableSubstitution;
 import org.apache.hadoop.hive.service.HiveServer;
+import org.apache.hive.common.util.HiveVersionInfo;
 import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * HiveShell implementation delegating to HiveServerContainer
@@ -56,16 +66,22 @@ class HiveShellBase implements HiveShell {
 	protected final List<HiveResource> resources;
 	protected final List<String> scriptsUnderTest;
 
+	/**
+	 * Null unless the setup should be restored from a snapshot when possible.
+	 */
+	protected final SetupSnapshots setupSnapshots;
+
 	HiveShellBase(HiveServerContainer hiveServerContainer,
 			Map<String, String> props, HiveServerContext context,
 			List<String> setupScripts, List<HiveResource> resources,
-			List<String> scriptsUnderTest) {
+			List<String> scriptsUnderTest, SetupSnapshots setupSnapshots) {
 		this.hiveServerContainer = hiveServerContainer;
 		this.props = props;
 		this.context = context;
 		this.setupScripts = new ArrayList<>(setupScripts);
 		this.resources = new ArrayList<>(resources);
 		this.scriptsUnderTest = new ArrayList<>(scriptsUnderTest);
+		this.setupSnapshots = setupSnapshots;
 	}
 
 	@Override
@@ -80,6 +96,47 @@ class HiveShellBase implements HiveShell {
 		hiveServerContainer.executeScript(s);
 	}
 
+	@Override
+	public List<Object[]> executeQueryTyped(String s) {
+		assertStarted();
+		return hiveServerContainer.executeQueryTyped(s);
+	}
+
+	@Override
+	public ResultCursor executeQueryStreaming(String s) {
+		return executeQueryStreaming(s, ResultCursor.DEFAULT_BATCH_SIZE);
+	}
+
+	@Override
+	public ResultCursor executeQueryStreaming(String s, int batchSize) {
+		assertStarted();
+		return hiveServerContainer.executeQueryStreaming(s, batchSize);
+	}
+
+	@Override
+	public QueryProfile getLastQueryProfile() {
+		assertStarted();
+		return hiveServerContainer.getLastQueryProfile();
+	}
+
+	@Override
+	public ExplainPlan explain(String hql) {
+		assertStarted();
+		return ExplainPlan.parse(hiveServerContainer.executeQuery("EXPLAIN " + hql));
+	}
+
+	@Override
+	public void addPartitions(String databaseName, String tableName, List<Map<String, String>> partitionSpecs) {
+		assertStarted();
+		hiveServerContainer.addPartitions(databaseName, tableName, partitionSpecs);
+	}
+
+	@Override
+	public InsertIntoTable insertInto(String databaseName, String tableName) {
+		assertStarted();
+		return hiveServerContainer.insertInto(databaseName, tableName);
+	}
+
 	@Override
 	public HiveServer.HiveServerHandler getClient() {
 		assertStarted();
@@ -96,13 +153,108 @@ class HiveShellBase implements HiveShell {
 		props.put("hive.metastore.warehouse.dir", "file:///tmp/warehouse");
 		props.put("javax.jdo.option.ConnectionURL",
 				"jdbc:derby:;databaseName=/tmp/metastore_db;create=true");*/
-		hiveServerContainer.init(props, context);
+		if (setupSnapshots != null && !hiveServerContainer.isStarted()) {
+			startFromSetupSnapshot();
+		} else {
+			startHiveServer();
+			setUp();
+		}
+	}
 
+	private void setUp() {
+		long start = System.nanoTime();
 		executeSetupScripts();
+		start = phaseFinished(PhaseListener.Phase.SETUP_SCRIPTS, start);
 
 		prepareResources();
+		start = phaseFinished(PhaseListener.Phase.RESOURCES, start);
 
 		executeScriptsUnderTest();
+		phaseFinished(PhaseListener.Phase.SCRIPTS_UNDER_TEST, start);
+	}
+
+	/**
+	 * Reports the phase started at the given time to the listener of the HiveServer.
+	 * @return the time the phase finished
+	 */
+	private long phaseFinished(PhaseListener.Phase phase, long start) {
+		long end = System.nanoTime();
+		hiveServerContainer.getPhaseListener().phaseFinished(phase, null, end - start);
+		return end;
+	}
+
+	/**
+	 * Restores the HiveServer from a snapshot of an identical setup if there is one. Otherwise the HiveServer is
+	 * set up as usual and a snapshot is captured for the following test methods.
+	 */
+	private void startFromSetupSnapshot() {
+		String fingerprint = getSetupFingerprint();
+		if (!setupSnapshots.restore(fingerprint, hiveServerContainer, props, context)) {
+			long start = System.currentTimeMillis();
+			hiveServerContainer.init(props, context);
+			setUp();
+			setupSnapshots.capture(fingerprint, hiveServerContainer, System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Fingerprint of everything that goes into the setup of this shell. Includes the context and the Hive
+	 * version since snapshots may be kept between test runs.
+	 */
+	private String getSetupFingerprint() {
+		Hasher hasher = Hashing.sha1().newHasher();
+		putString(hasher, context.getClass().getName());
+		putString(hasher, HiveVersionInfo.getVersion());
+		for (Map.Entry<String, String> property : new TreeMap<>(props).entrySet()) {
+			putString(hasher, property.getKey());
+			putString(hasher, property.getValue());
+		}
+		hasher.putInt(setupScripts.size());
+		for (String setupScript : setupScripts) {
+			putString(hasher, setupScript);
+		}
+		hasher.putInt(resources.size());
+		for (HiveResource resource : resources) {
+			putString(hasher, resource.getTargetFile());
+			putData(hasher, resource);
+		}
+		hasher.putInt(scriptsUnderTest.size());
+		for (String script : scriptsUnderTest) {
+			putString(hasher, script);
+		}
+		return hasher.hash().toString();
+	}
+
+	private static void putData(Hasher hasher, HiveResource resource) {
+		byte[] buffer = new byte[8192];
+		long length = 0;
+		try (InputStream in = resource.openData()) {
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+				hasher.putBytes(buffer, 0, read);
+				length += read;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read resource " + resource.getTargetFile() + ": "
+					+ e.getMessage(), e);
+		}
+		hasher.putLong(length);
+	}
+
+	private static void putString(Hasher hasher, String value) {
+		// Length prefixed to tell apart e.g. ["ab", "c"] from ["a", "bc"]
+		hasher.putInt(value.length()).putString(value);
+	}
+
+	/**
+	 * Starts the HiveServer with the properties of this shell. If the HiveServer is already started, e.g. reused
+	 * from a previous test method or taken from a pool, the properties are merged with its HiveConf instead.
+	 */
+	private void startHiveServer() {
+		if (hiveServerContainer.isStarted()) {
+			hiveServerContainer.mergeTestConfig(props);
+		} else {
+			hiveServerContainer.init(props, context);
+		}
 	}
 
 	@Override
@@ -117,8 +269,7 @@ class HiveShellBase implements HiveShell {
 		for (Path script : scripts) {
 			assertFileExists(script);
 			try {
-				String join = new String(Files.readAllBytes(script), charset);
-				setupScripts.add(join);
+				setupScripts.add(ScriptCache.getInstance().read(script, charset));
 			} catch (IOException e) {
 				throw new IllegalArgumentException(
 						"Unable to read setup script file '" + script + "': "
@@ -178,16 +329,13 @@ class HiveShellBase implements HiveShell {
 
 	@Override
 	public OutputStream getResourceOutputStream(String targetFile) {
-		try {
-			assertNotStarted();
-			HiveResource resource = new HiveResource(targetFile);
-			resources.add(resource);
-			OutputStream hiveShellStateAwareOutputStream = createPreStartOutputStream(resource
-					.getOutputStream());
-			return hiveShellStateAwareOutputStream;
-		} catch (IOException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
+		assertNotStarted();
+		ResourceOutputStream outputStream = new ResourceOutputStream(
+				context.getBaseDir().getRoot().toPath(),
+				ResourceOutputStream.getConfiguredSpillThreshold());
+		HiveResource resource = new HiveResource(targetFile, outputStream);
+		resources.add(resource);
+		return outputStream;
 	}
 
 	@Override
@@ -202,13 +350,9 @@ class HiveShellBase implements HiveShell {
 
 	@Override
 	public void addResource(String targetFile, Path sourceFile) {
-		try {
-			assertNotStarted();
-			assertFileExists(sourceFile);
-			resources.add(new HiveResource(targetFile, sourceFile));
-		} catch (IOException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
+		assertNotStarted();
+		assertFileExists(sourceFile);
+		resources.add(new HiveResource(targetFile, sourceFile));
 	}
 
 	@Override
@@ -219,44 +363,28 @@ class HiveShellBase implements HiveShell {
 	private void executeSetupScripts() {
 		for (String setupScript : setupScripts) {
 			logger.info("Executing script: " + setupScript);
-			hiveServerContainer.executeScript(setupScript);
+			hiveServerContainer.executeSetupScript(setupScript);
 		}
 	}
 
 	private void prepareResources() {
+		ResourceWriter writer = new ResourceWriter(ResourceWriter.getConfiguredThreads(), getHiveConf());
 		for (HiveResource resource : resources) {
 			String expandedPath = hiveServerContainer
 					.expandVariableSubstitutes(resource.getTargetFile());
 
 			assertResourcePreconditions(resource, expandedPath);
 
-			Path targetFile = Paths.get(expandedPath);
-
-			// Create target file in the tmp dir and write test data to it.
-			try {
-				Files.createDirectories(targetFile.getParent());
-				OutputStream targetFileOutputStream = Files.newOutputStream(
-						targetFile, StandardOpenOption.CREATE_NEW);
-				targetFileOutputStream.write(resource.getOutputStream()
-						.toByteArray());
-				resource.getOutputStream().close();
-				targetFileOutputStream.close();
-			} catch (IOException e) {
-				throw new IllegalStateException(
-						"Failed to create resource target file: " + targetFile
-								+ " (" + resource.getTargetFile() + "): "
-								+ e.getMessage(), e);
-			}
-
-			logger.info("Created hive resource " + targetFile);
-
+			writer.add(resource, expandedPath, isFileSystemUri(expandedPath));
 		}
+		// Create target files in the tmp dir and write test data to them.
+		writer.write();
 	}
 
 	private void executeScriptsUnderTest() {
 		for (String script : scriptsUnderTest) {
 			try {
-				hiveServerContainer.executeScript(script);
+				hiveServerContainer.executeScriptConcurrently(script);
 			} catch (Exception e) {
 				throw new IllegalStateException("Failed to executeScript '"
 						+ script + "': " + e.getMessage(), e);
@@ -273,7 +401,9 @@ class HiveShellBase implements HiveShell {
 				+ "unresolved references. Original arg was: %s", expandedPath,
 				resource.getTargetFile());
 
-		boolean isTargetFileWithinTestDir = expandedPath
+		String targetPath = isFileSystemUri(expandedPath) ?
+				new org.apache.hadoop.fs.Path(expandedPath).toUri().getPath() : expandedPath;
+		boolean isTargetFileWithinTestDir = targetPath
 				.startsWith(hiveServerContainer.getBaseDir().getRoot()
 						.getAbsolutePath());
 
@@ -284,6 +414,13 @@ class HiveShellBase implements HiveShell {
 						resource);
 	}
 
+	/**
+	 * True for paths with a scheme of at least two letters, which rules out windows drive letters.
+	 */
+	private static boolean isFileSystemUri(String path) {
+		return path.matches("[a-zA-Z][a-zA-Z0-9+.-]+:/.*");
+	}
+
 	protected final void assertFileExists(Path file) {
 		Preconditions.checkNotNull(file, "File argument is null");
 		Preconditions.checkArgument(Files.exists(file),
@@ -300,17 +437,4 @@ class HiveShellBase implements HiveShell {
 		Preconditions.checkState(started, "HiveShell was not started");
 	}
 
-	private OutputStream createPreStartOutputStream(
-			final ByteArrayOutputStream resourceOutputStream) {
-		return new OutputStream() {
-			@Override
-			public void write(int b) throws IOException {
-				// It should not be possible to write to the stream after the
-				// shell has been started.
-				assertNotStarted();
-				resourceOutputStream.write(b);
-			}
-		};
-	}
-
 }
@@ -20,6 +20,9 @@ import com.google.common.base.Preconditions;
 import com.klarna.hiverunner.HiveServerContainer;
 import com.klarna.hiverunner.HiveServerContext;
 import com.klarna.hiverunner.HiveShellContainer;
+import com.klarna.hiverunner.ScriptCache;
+import com.klarna.hiverunner.SetupSnapshots;
+import com.klarna.hiverunner.annotations.HiveServerLifecycle;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -40,6 +43,8 @@ public class HiveShellBuilder {
     private HiveServerContainer hiveServerContainer;
     private List<HiveResource> resources = new ArrayList<HiveResource>();
     private List<String> setupScripts = new ArrayList<String>();
+    private HiveServerLifecycle.Strategy lifecycleStrategy = HiveServerLifecycle.Strategy.TEAR_DOWN;
+    private SetupSnapshots setupSnapshots;
 
     public void setContext(HiveServerContext context) {
         this.context = context;
@@ -49,6 +54,14 @@ public class HiveShellBuilder {
         this.hiveServerContainer = hiveServerContainer;
     }
 
+    public void setLifecycleStrategy(HiveServerLifecycle.Strategy lifecycleStrategy) {
+        this.lifecycleStrategy = lifecycleStrategy;
+    }
+
+    public void setSetupSnapshots(SetupSnapshots setupSnapshots) {
+        this.setupSnapshots = setupSnapshots;
+    }
+
     public void putAllProperties(Map<String, String> props) {
         this.props.putAll(props);
     }
@@ -69,7 +82,7 @@ public class HiveShellBuilder {
         for (Path script : scripts) {
             Preconditions.checkState(Files.exists(script), "File %s does not exist", script);
             try {
-                scriptsUnderTest.add(new String(Files.readAllBytes(script), charset));
+                scriptsUnderTest.add(ScriptCache.getInstance().read(script, charset));
             } catch (IOException e) {
                 throw new IllegalArgumentException("Failed to load script file '" + script + "'");
             }
@@ -77,8 +90,17 @@ public class HiveShellBuilder {
     }
 
     public HiveShellContainer buildShell() {
-        return new HiveShellTearable(hiveServerContainer, props, context, setupScripts, resources,
-                scriptsUnderTest);
+        switch (lifecycleStrategy) {
+            case RESET:
+                return new HiveShellResettable(hiveServerContainer, props, context, setupScripts, resources,
+                        scriptsUnderTest, setupSnapshots);
+            case TEAR_DOWN:
+            case POOLED:
+                return new HiveShellTearable(hiveServerContainer, props, context, setupScripts, resources,
+                        scriptsUnderTest, setupSnapshots);
+            default:
+                throw new IllegalArgumentException("Unsupported lifecycle strategy: " + lifecycleStrategy);
+        }
     }
 }
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import com.klarna.hiverunner.HiveServerContainer;
+import com.klarna.hiverunner.HiveServerContext;
+import com.klarna.hiverunner.HiveShellContainer;
+import com.klarna.hiverunner.SetupSnapshots;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HiveShellContainer implementation that will reuse an already started hive server and reset it after the test
+ * method is executed instead of tearing it down.
+ */
+class HiveShellResettable extends HiveShellBase implements HiveShellContainer {
+
+    HiveShellResettable(HiveServerContainer hiveServerContainer, Map<String, String> props,
+                        HiveServerContext context,
+                        List<String> setupScripts, List<HiveResource> resources,
+                        List<String> scriptsUnderTest, SetupSnapshots setupSnapshots) {
+        super(hiveServerContainer, props, context, setupScripts, resources, scriptsUnderTest, setupSnapshots);
+    }
+
+    @Override
+    public void tearDown() {
+        assertStarted();
+        if (!hiveServerContainer.isStarted()) {
+            return;
+        }
+        try {
+            hiveServerContainer.reset();
+        } catch (RuntimeException e) {
+            // Don't leave a half reset hive server behind for the coming test methods.
+            hiveServerContainer.tearDown();
+            throw e;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.klarna.hiverunner.builder;
 import com.klarna.hiverunner.HiveServerContainer;
 import com.klarna.hiverunner.HiveServerContext;
 import com.klarna.hiverunner.HiveShellContainer;
+import com.klarna.hiverunner.SetupSnapshots;
 
 import java.util.List;
 import java.util.Map;
@@ -31,14 +32,17 @@ class HiveShellTearable extends HiveShellBase implements HiveShellContainer {
     HiveShellTearable(HiveServerContainer hiveServerContainer, Map<String, String> props,
                       HiveServerContext context,
                       List<String> setupScripts, List<HiveResource> resources,
-                      List<String> scriptsUnderTest) {
-        super(hiveServerContainer, props, context, setupScripts, resources, scriptsUnderTest);
+                      List<String> scriptsUnderTest, SetupSnapshots setupSnapshots) {
+        super(hiveServerContainer, props, context, setupScripts, resources, scriptsUnderTest, setupSnapshots);
     }
 
     @Override
     public void tearDown() {
+        // A pooled hive server is started even if this shell never was, so release it before asserting.
+        if (hiveServerContainer.isStarted()) {
+            hiveServerContainer.tearDown();
+        }
         assertStarted();
-        hiveServerContainer.tearDown();
     }
 
 
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered output stream for resource data. Data is kept in memory up to a threshold and spilled to a temporary
+ * file in the test sand box beyond it.
+ * <p/>
+ * The stream is sealed when the HiveShell is started. Writes are only checked against that once per buffer: a
+ * sealed stream has a full buffer, so the next write of any size goes through the check.
+ */
+class ResourceOutputStream extends OutputStream {
+
+    /**
+     * System property controlling the number of bytes kept in memory before a resource is spilled to disk.
+     */
+    static final String SPILL_THRESHOLD_PROPERTY = "hiverunner.resource.spill.threshold";
+
+    static final long DEFAULT_SPILL_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path spillDir;
+
+    private final long spillThreshold;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private Path spillFile;
+
+    private OutputStream spillStream;
+
+    private boolean sealed;
+
+    /**
+     * @param spillDir       Directory for the spill file, e.g. the test sand box
+     * @param spillThreshold Number of bytes kept in memory before spilling to disk
+     */
+    ResourceOutputStream(Path spillDir, long spillThreshold) {
+        this.spillDir = spillDir;
+        this.spillThreshold = spillThreshold;
+    }
+
+    static long getConfiguredSpillThreshold() {
+        return Long.getLong(SPILL_THRESHOLD_PROPERTY, DEFAULT_SPILL_THRESHOLD);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - count) {
+            flushBuffer();
+        }
+        if (length >= buffer.length) {
+            writeThrough(bytes, offset, length);
+        } else {
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+    }
+
+    /**
+     * No-op once sealed, since writers wrapping this stream are commonly closed after the HiveShell is started.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!sealed) {
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Writes the data to the given file, which must not exist. A spill file is moved rather than copied.
+     */
+    void materialize(Path target) throws IOException {
+        seal();
+        if (spillFile != null) {
+            Files.move(spillFile, target);
+            spillFile = null;
+        } else {
+            try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+                memory.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Opens the data written so far for reading. Seals the stream.
+     */
+    InputStream openData() throws IOException {
+        seal();
+        return spillFile != null ? Files.newInputStream(spillFile) : new ByteArrayInputStream(memory.toByteArray());
+    }
+
+    private void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        flushBuffer();
+        sealed = true;
+        count = buffer.length;
+        if (spillStream != null) {
+            spillStream.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        Preconditions.checkState(!sealed, "HiveShell was already started");
+        if (count > 0) {
+            writeThrough(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeThrough(byte[] bytes, int offset, int length) throws IOException {
+        if (spillStream == null && memory.size() + length > spillThreshold) {
+            spill();
+        }
+        if (spillStream != null) {
+            spillStream.write(bytes, offset, length);
+        } else {
+            memory.write(bytes, offset, length);
+        }
+    }
+
+    private void spill() throws IOException {
+        Preconditions.checkState(spillDir != null, "Resource exceeds %s bytes but may not be spilled to disk",
+                spillThreshold);
+        spillFile = Files.createTempFile(spillDir, "resource", ".spill");
+        spillStream = Files.newOutputStream(spillFile);
+        memory.writeTo(spillStream);
+        memory = null;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes resources to their target files. The parent directories are created once each up front, then the files
+ * are written on a thread pool shared by all HiveShells in this JVM. Failures are collected and reported as one
+ * exception after all files have been tried.
+ * <p/>
+ * With a single thread, see {@link #THREADS_PROPERTY}, the files are written one after another in the calling
+ * thread and the first failure is thrown right away.
+ */
+class ResourceWriter {
+
+    /**
+     * System property controlling the number of threads writing resource files.
+     */
+    static final String THREADS_PROPERTY = "hiverunner.resource.threads";
+
+    static final int DEFAULT_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceWriter.class);
+
+    private static ExecutorService executor;
+
+    private final int threads;
+
+    private final Configuration conf;
+
+    private final List<Target> targets = new ArrayList<>();
+
+    /**
+     * @param threads 1 to write files in the calling thread, more to write them on the shared pool, which is
+     *                sized by {@link #THREADS_PROPERTY} alone since it outlives any single writer
+     * @param conf    Configuration of the Hadoop file systems of targets given as URIs
+     */
+    ResourceWriter(int threads, Configuration conf) {
+        this.threads = threads;
+        this.conf = conf;
+    }
+
+    static int getConfiguredThreads() {
+        return Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, getConfiguredThreads()), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "hiverunner-resource-writer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @param expandedPath The target file with all variables expanded, either a local path or a file system URI
+     */
+    void add(HiveResource resource, String expandedPath, boolean isFileSystemUri) {
+        targets.add(new Target(resource, expandedPath, isFileSystemUri));
+    }
+
+    void write() {
+        createDirectories();
+        if (threads <= 1 || targets.size() <= 1) {
+            for (Target target : targets) {
+                target.call();
+            }
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Target target : targets) {
+            futures.add(getExecutor().submit(target));
+        }
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while creating resource target files", e);
+            }
+        }
+        throwFailures(failures);
+    }
+
+    private void createDirectories() {
+        Set<Path> localDirs = new LinkedHashSet<>();
+        Set<org.apache.hadoop.fs.Path> fileSystemDirs = new LinkedHashSet<>();
+        for (Target target : targets) {
+            if (target.isFileSystemUri) {
+                fileSystemDirs.add(new org.apache.hadoop.fs.Path(target.expandedPath).getParent());
+            } else {
+                localDirs.add(Paths.get(target.expandedPath).getParent());
+            }
+        }
+        try {
+            for (Path dir : localDirs) {
+                Files.createDirectories(dir);
+            }
+            for (org.apache.hadoop.fs.Path dir : fileSystemDirs) {
+                dir.getFileSystem(conf).mkdirs(dir);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create resource target dir: " + e.getMessage(), e);
+        }
+    }
+
+    private static void throwFailures(List<Throwable> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        Throwable first = failures.get(0);
+        if (failures.size() == 1) {
+            throw first instanceof RuntimeException ?
+                    (RuntimeException) first : new IllegalStateException(first.getMessage(), first);
+        }
+        IllegalStateException exception = new IllegalStateException(
+                "Failed to create " + failures.size() + " resource target files, first: " + first.getMessage(), first);
+        for (Throwable failure : failures.subList(1, failures.size())) {
+            exception.addSuppressed(failure);
+        }
+        throw exception;
+    }
+
+    private class Target implements Callable<Void> {
+
+        private final HiveResource resource;
+        private final String expandedPath;
+        private final boolean isFileSystemUri;
+
+        Target(HiveResource resource, String expandedPath, boolean isFileSystemUri) {
+            this.resource = resource;
+            this.expandedPath = expandedPath;
+            this.isFileSystemUri = isFileSystemUri;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                if (isFileSystemUri) {
+                    // E.g. a directory of an in memory file system
+                    resource.materialize(new org.apache.hadoop.fs.Path(expandedPath), conf);
+                } else {
+                    resource.materialize(Paths.get(expandedPath));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(
+                        "Failed to create resource target file: " + expandedPath
+                                + " (" + resource.getTargetFile() + "): "
+                                + e.getMessage(), e);
+            }
+            LOGGER.info("Created hive resource " + expandedPath);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.ComparisonFailure;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(ProductionOptimizerHiveRunner.class)
+public class ExplainPlanTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE TABLE foo (id int, name string);" +
+            "CREATE TABLE bar (id int, value string);";
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell shell;
+
+    @Test
+    public void joinShouldBeMapSide() throws IOException {
+        shell.start();
+        ExplainPlan plan = shell.explain(script("explainPlanTest/count_by_name.sql"));
+
+        // The skew join optimizer adds a conditional second map join
+        for (ExplainPlan.Join join : plan.getJoins()) {
+            Assert.assertTrue(join.toString(), join.isMapJoin());
+            Assert.assertEquals(Arrays.asList("Inner Join"), join.getTypes());
+        }
+        Assert.assertEquals("Map Reduce Local Work", plan.getStages().get(0).getType());
+    }
+
+    @Test
+    public void joinShouldBeShuffledWithoutMapJoinConversion() throws IOException {
+        shell.setProperty("hive.auto.convert.join", "false");
+        shell.start();
+        ExplainPlan plan = shell.explain(script("explainPlanTest/count_by_name.sql"));
+
+        ExplainPlan.Stage first = plan.getStages().get(0);
+        Assert.assertEquals("Map Reduce", first.getType());
+        Assert.assertTrue(first.getOperators().contains("Join Operator"));
+        Assert.assertFalse(first.getJoins().get(0).isMapJoin());
+    }
+
+    @Test
+    public void stagesShouldBeParsed() {
+        shell.start();
+        ExplainPlan plan = shell.explain("SELECT foo.id, bar.value FROM foo LEFT OUTER JOIN bar ON (foo.id = bar.id)");
+
+        ExplainPlan.Stage mapReduce = plan.getStages("Map Reduce").get(0);
+        ExplainPlan.Stage localWork = plan.getStages("Map Reduce Local Work").get(0);
+        Assert.assertEquals(Arrays.asList(localWork.getId()), mapReduce.getDependencies());
+        Assert.assertEquals(Collections.emptyList(), localWork.getDependencies());
+        Assert.assertTrue(mapReduce.getOperators().contains("Map Join Operator"));
+        Assert.assertEquals(Arrays.asList("Left Outer Join"), mapReduce.getJoins().get(0).getTypes());
+        Assert.assertEquals(1, plan.getStages("Fetch Operator").size());
+    }
+
+    @Test
+    public void backupStagesShouldBeParsed() throws IOException {
+        shell.start();
+        // EXPLAIN output of Hive 0.12 for count_by_name.sql with hive.auto.convert.join.noconditionaltask=false
+        ExplainPlan plan = ExplainPlan.parse(Resources.readLines(
+                Resources.getResource("explainPlanTest/conditional_map_join.explain"), Charsets.UTF_8));
+
+        Assert.assertEquals(Arrays.asList("Stage-7", "Stage-8", "Stage-1"),
+                plan.getStage("Stage-6").getConditionalStages());
+        Assert.assertEquals("Stage-1", plan.getStage("Stage-7").getBackupStage());
+        Assert.assertEquals("Stage-1", plan.getStage("Stage-8").getBackupStage());
+        Assert.assertEquals(Arrays.asList("Stage-7"), plan.getStage("Stage-4").getDependencies());
+        Assert.assertNull(plan.getStage("Stage-4").getBackupStage());
+        Assert.assertEquals(Arrays.asList("Stage-1", "Stage-4", "Stage-5"),
+                plan.getStage("Stage-2").getDependencies());
+        Assert.assertTrue(plan.getStage("Stage-7").toString().startsWith(
+                "Stage-7: Map Reduce Local Work backed up by Stage-1"));
+    }
+
+    @Test
+    public void backupStageShouldNotBeTakenForDependency() {
+        shell.start();
+        ExplainPlan plan = ExplainPlan.parse(Arrays.asList("STAGE DEPENDENCIES:",
+                "  Stage-8 is a root stage has a backup stage: Stage-1",
+                "  Stage-9 depends on stages: Stage-5, Stage-8 has a backup stage: Stage-1",
+                "STAGE PLANS:",
+                "  Stage: Stage-8",
+                "    Map Reduce Local Work",
+                "  Stage: Stage-9",
+                "    Map Reduce"));
+
+        Assert.assertEquals("Stage-1", plan.getStage("Stage-8").getBackupStage());
+        Assert.assertEquals(Collections.emptyList(), plan.getStage("Stage-8").getDependencies());
+        Assert.assertEquals("Stage-1", plan.getStage("Stage-9").getBackupStage());
+        Assert.assertEquals(Arrays.asList("Stage-5", "Stage-8"), plan.getStage("Stage-9").getDependencies());
+    }
+
+    @Test
+    public void conditionalMapJoinShouldHaveBackupStages() throws IOException {
+        shell.setProperty("hive.auto.convert.join.noconditionaltask", "false");
+        shell.start();
+        ExplainPlan plan = shell.explain(script("explainPlanTest/count_by_name.sql"));
+
+        ExplainPlan.Stage conditional = plan.getStages("Conditional Operator").get(0);
+        for (String id : conditional.getConditionalStages()) {
+            ExplainPlan.Stage alternative = plan.getStage(id);
+            if (alternative.getType().equals("Map Reduce Local Work")) {
+                Assert.assertNotNull(alternative.toString(), alternative.getBackupStage());
+                Assert.assertTrue(conditional.getConditionalStages().contains(alternative.getBackupStage()));
+            }
+        }
+    }
+
+    @Test
+    public void planShouldMatchGoldenFile() throws IOException {
+        shell.start();
+        PlanAssert.assertPlan("explainPlanTest/count_by_name.plan",
+                shell.explain(script("explainPlanTest/count_by_name.sql")));
+    }
+
+    @Test(expected = ComparisonFailure.class)
+    public void changedPlanShouldNotMatchGoldenFile() throws IOException {
+        shell.setProperty("hive.auto.convert.join", "false");
+        shell.start();
+        PlanAssert.assertPlan("explainPlanTest/count_by_name.plan",
+                shell.explain(script("explainPlanTest/count_by_name.sql")));
+    }
+
+    private static String script(String resource) throws IOException {
+        return Resources.toString(Resources.getResource(resource), Charsets.UTF_8);
+    }
+}
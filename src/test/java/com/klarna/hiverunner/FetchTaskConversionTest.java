@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Verifies that simple lookups are answered by a fetch task without launching MapReduce jobs, and that queries over
+ * partition columns are answered from the meta store.
+ */
+@RunWith(FetchTaskHiveRunner.class)
+public class FetchTaskConversionTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE TABLE foo (id int, name string) " +
+            "PARTITIONED BY (year string) " +
+            "ROW FORMAT DELIMITED FIELDS TERMINATED BY ',' " +
+            "LOCATION '${hiveconf:hadoop.tmp.dir}/foo';" +
+            "ALTER TABLE foo ADD PARTITION (year='2013');" +
+            "ALTER TABLE foo ADD PARTITION (year='2014');";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/year=2013/data.csv")
+    private String data2013 = "1,a\n2,b\n";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/year=2014/data.csv")
+    private String data2014 = "3,c\n4,d\n";
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void projectionShouldBeFetched() {
+        assertFetched(Arrays.asList("a", "b", "c", "d"), "SELECT name FROM foo");
+    }
+
+    @Test
+    public void filterShouldBeFetched() {
+        assertFetched(Arrays.asList("3\tc"), "SELECT id, name FROM foo WHERE id > 2 AND name = 'c'");
+    }
+
+    @Test
+    public void partitionFilterShouldBeFetched() {
+        assertFetched(Arrays.asList("1", "2"), "SELECT id FROM foo WHERE year = '2013'");
+    }
+
+    @Test
+    public void limitShouldBeFetched() {
+        Assert.assertEquals(1, shell.executeQuery("SELECT * FROM foo LIMIT 1").size());
+        assertNoMapReduce();
+    }
+
+    @Test
+    public void partitionColumnsShouldBeReadFromMetaStore() {
+        String query = "SELECT DISTINCT year FROM foo";
+        String plan = shell.executeQuery("EXPLAIN EXTENDED " + query).toString();
+        Assert.assertTrue(plan, plan.contains("OneNullRowInputFormat"));
+
+        List<String> actual = shell.executeQuery(query);
+        Collections.sort(actual);
+        Assert.assertEquals(Arrays.asList("2013", "2014"), actual);
+    }
+
+    private void assertFetched(List<String> expected, String query) {
+        List<String> actual = shell.executeQuery(query);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+        assertNoMapReduce();
+    }
+
+    private void assertNoMapReduce() {
+        QueryProfile profile = shell.getLastQueryProfile();
+        Assert.assertFalse(profile.toString(), profile.getStageTypes().contains("MAPRED"));
+        Assert.assertEquals(profile.toString(), 0, profile.getMapReduceJobs());
+    }
+}
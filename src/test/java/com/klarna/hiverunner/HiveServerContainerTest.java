@@ -16,14 +16,23 @@
 
 package com.klarna.hiverunner;
 
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.hsqldb.DatabaseManager;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class HiveServerContainerTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testSplitBasic() {
         String str = "foo;bar;baz";
@@ -38,16 +47,77 @@ public class HiveServerContainerTest {
         Assert.assertEquals(expected, Arrays.asList(new HiveServerContainer().splitStatements(str)));
     }
 
-    /**
-     * This test shows that the split statement method is really basic.
-     * The current version will not cater for semicolon within quotes etc.
-     * <p/>
-     * TODO: Support quoted semicolons
-     */
-    @Test(expected = AssertionError.class)
-    public void methodWrongfullySplitsOnQuotedDelimiter() {
+    @Test
+    public void testDontSplitQuotedDelimiter() {
         String str = "bar\";\"\\baz";
         List expected = Arrays.asList(str);
         Assert.assertEquals(expected, Arrays.asList(new HiveServerContainer().splitStatements(str)));
     }
+
+    @Test
+    public void testDontSplitSingleQuotedOrBacktickedDelimiter() {
+        String str = "select ';', `a;b` from foo;select 'it\\'s;'";
+        List expected = Arrays.asList("select ';', `a;b` from foo", "select 'it\\'s;'");
+        Assert.assertEquals(expected, Arrays.asList(new HiveServerContainer().splitStatements(str)));
+    }
+
+    @Test
+    public void testDontSplitCommentedDelimiter() {
+        String str = "select 1 -- first; statement\n;select 2";
+        List expected = Arrays.asList("select 1 -- first; statement\n", "select 2");
+        Assert.assertEquals(expected, Arrays.asList(new HiveServerContainer().splitStatements(str)));
+    }
+
+    @Test
+    public void testDropBlankAndCommentOnlyStatements() {
+        String str = "-- header\n  set foo=bar;\n\n-- only a comment;\n;  \n";
+        List expected = Arrays.asList("set foo=bar");
+        Assert.assertEquals(expected, Arrays.asList(new HiveServerContainer().splitStatements(str)));
+    }
+
+    @Test
+    public void metaStoresShouldBeShutDownOnTearDown() throws IOException {
+        int openDatabases = DatabaseManager.getDatabaseURIs().size();
+
+        HiveServerContainer container = new HiveServerContainer();
+        container.init(Collections.<String, String>emptyMap(), newContext());
+        container.executeScript("CREATE TABLE foo (id int)");
+        HiveServerSnapshot snapshot = container.snapshot(folder.newFolder("snapshot").toPath(), 0);
+        container.tearDown();
+        Assert.assertEquals(openDatabases, DatabaseManager.getDatabaseURIs().size());
+
+        HiveServerContainer restored = new HiveServerContainer();
+        restored.init(Collections.<String, String>emptyMap(), newContext(), snapshot);
+        Assert.assertEquals(Arrays.asList("foo"), restored.executeQuery("SHOW TABLES"));
+        Assert.assertEquals(openDatabases + 1, DatabaseManager.getDatabaseURIs().size());
+        restored.tearDown();
+        Assert.assertEquals(openDatabases, DatabaseManager.getDatabaseURIs().size());
+    }
+
+    @Test
+    public void startupPropertiesShouldNotChangeOnStartedServer() throws IOException {
+        HiveServerContainer container = new HiveServerContainer();
+        container.init(Collections.<String, String>emptyMap(), newContext());
+        String key = HiveConf.ConfVars.METASTOREWAREHOUSE.varname;
+        try {
+            String warehouse = container.getClient().getHiveConf().get(key);
+            container.mergeTestConfig(Collections.singletonMap("my.schema", "bar"));
+            container.mergeTestConfig(Collections.singletonMap(key, warehouse));
+            Assert.assertEquals("bar", container.getClient().getHiveConf().get("my.schema"));
+            try {
+                container.mergeTestConfig(Collections.singletonMap(key, warehouse + "/other"));
+                Assert.fail("Changed a property read at startup");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(warehouse, container.getClient().getHiveConf().get(key));
+            }
+        } finally {
+            container.tearDown();
+        }
+    }
+
+    private StandaloneHiveServerContext newContext() throws IOException {
+        TemporaryFolder basedir = new TemporaryFolder(folder.newFolder());
+        basedir.create();
+        return new StandaloneHiveServerContext(basedir);
+    }
 }
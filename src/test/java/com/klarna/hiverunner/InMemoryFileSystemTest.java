@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.google.common.base.Charsets;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class InMemoryFileSystemTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryFileSystem fileSystem;
+
+    private String root;
+
+    @Before
+    public void setUp() throws IOException {
+        fileSystem = new InMemoryFileSystem();
+        fileSystem.initialize(URI.create("mem:///"), new Configuration());
+        root = folder.getRoot().getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        InMemoryFileSystem.deleteTree(root);
+        fileSystem.close();
+    }
+
+    @Test
+    public void fileShouldBeReadBack() throws IOException {
+        Path file = path("foo/data.csv");
+        write(file, "1,2\n");
+
+        FileStatus status = fileSystem.getFileStatus(file);
+        Assert.assertEquals(4, status.getLen());
+        Assert.assertFalse(status.isDirectory());
+        Assert.assertTrue(fileSystem.getFileStatus(path("foo")).isDirectory());
+        Assert.assertEquals("1,2\n", read(file));
+    }
+
+    @Test
+    public void directoryShouldBeListed() throws IOException {
+        write(path("dir/a"), "a");
+        fileSystem.mkdirs(path("dir/b"));
+        write(path("dir-c"), "c");
+
+        Set<String> names = new HashSet<>();
+        for (FileStatus status : fileSystem.listStatus(path("dir"))) {
+            names.add(status.getPath().getName() + (status.isDirectory() ? "/" : ""));
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b/")), names);
+    }
+
+    @Test
+    public void directoryShouldBeRenamed() throws IOException {
+        write(path("tmp/part-00000"), "a");
+        fileSystem.mkdirs(path("table"));
+
+        Assert.assertTrue(fileSystem.rename(path("tmp"), path("table/data")));
+        Assert.assertFalse(fileSystem.exists(path("tmp")));
+        Assert.assertEquals("a", read(path("table/data/part-00000")));
+    }
+
+    @Test
+    public void directoryShouldBeDeleted() throws IOException {
+        write(path("dir/a"), "a");
+        write(path("dir-c"), "c");
+
+        Assert.assertFalse(fileSystem.delete(path("missing"), true));
+        Assert.assertTrue(fileSystem.delete(path("dir"), true));
+        Assert.assertFalse(fileSystem.exists(path("dir/a")));
+        Assert.assertTrue(fileSystem.exists(path("dir-c")));
+    }
+
+    @Test(expected = IOException.class)
+    public void nonEmptyDirectoryShouldNotBeDeletedUnlessRecursive() throws IOException {
+        write(path("dir/a"), "a");
+        fileSystem.delete(path("dir"), false);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingFileShouldNotBeFound() throws IOException {
+        fileSystem.getFileStatus(path("missing"));
+    }
+
+    @Test
+    public void treeShouldBeRetained() throws IOException {
+        write(path("baseline"), "a");
+        Set<String> baseline = InMemoryFileSystem.listTree(root);
+        write(path("dir/added"), "b");
+
+        InMemoryFileSystem.retainTree(root, baseline);
+        Assert.assertTrue(fileSystem.exists(path("baseline")));
+        Assert.assertFalse(fileSystem.exists(path("dir")));
+    }
+
+    @Test
+    public void treeShouldBeExportedAndImported() throws IOException {
+        write(path("dir/a"), "a");
+        java.nio.file.Path export = folder.getRoot().toPath().resolve("export");
+        InMemoryFileSystem.exportTree(root, export);
+        Assert.assertEquals("a", new String(Files.readAllBytes(export.resolve("dir/a")), Charsets.UTF_8));
+
+        InMemoryFileSystem.deleteTree(root);
+        Assert.assertEquals(Collections.<String>emptySet(), InMemoryFileSystem.listTree(root));
+
+        InMemoryFileSystem.importTree(export, root);
+        Assert.assertEquals("a", read(path("dir/a")));
+    }
+
+    private Path path(String relative) {
+        return new Path(InMemoryFileSystem.SCHEME, null, root + "/" + relative);
+    }
+
+    private void write(Path file, String data) throws IOException {
+        try (FSDataOutputStream out = fileSystem.create(file)) {
+            out.write(data.getBytes(Charsets.UTF_8));
+        }
+    }
+
+    private String read(Path file) throws IOException {
+        byte[] buffer = new byte[(int) fileSystem.getFileStatus(file).getLen()];
+        try (FSDataInputStream in = fileSystem.open(file)) {
+            in.readFully(buffer);
+        }
+        return new String(buffer, Charsets.UTF_8);
+    }
+}
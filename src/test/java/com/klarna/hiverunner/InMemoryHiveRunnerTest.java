@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.METASTOREWAREHOUSE;
+
+/**
+ * Verifies that tables, loaded data and query output live in the in memory file system.
+ */
+@RunWith(InMemoryHiveRunner.class)
+public class InMemoryHiveRunnerTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE TABLE foo (id int, name string) " +
+            "ROW FORMAT DELIMITED FIELDS TERMINATED BY ',' " +
+            "LOCATION '${hiveconf:hadoop.tmp.dir}/foo';" +
+            "CREATE TABLE bar (id int, name string) PARTITIONED BY (year string);";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+    private String data = "1,a\n2,b\n3,c\n";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/load/data.csv")
+    private String loadData = "4,d\n";
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void directoriesShouldBeInMemory() {
+        Assert.assertTrue(shell.getHiveConf().get("hadoop.tmp.dir").startsWith("mem:/"));
+        Assert.assertTrue(shell.getHiveConf().get(METASTOREWAREHOUSE.varname).startsWith("mem:/"));
+    }
+
+    @Test
+    public void resourceShouldBeQueried() {
+        Assert.assertEquals(Arrays.asList("3"), shell.executeQuery("SELECT count(*) FROM foo"));
+    }
+
+    @Test
+    public void dataShouldBeLoaded() {
+        shell.execute("LOAD DATA INPATH '${hiveconf:hadoop.tmp.dir}/load/data.csv' INTO TABLE foo");
+        Assert.assertEquals(Arrays.asList("4"), shell.executeQuery("SELECT count(*) FROM foo"));
+    }
+
+    @Test
+    public void partitionShouldBeInsertedInWarehouse() throws IOException {
+        shell.execute("INSERT OVERWRITE TABLE bar PARTITION (year='2014') SELECT id, name FROM foo WHERE id > 1");
+
+        List<String> expected = Arrays.asList("2\tb\t2014", "3\tc\t2014");
+        Assert.assertEquals(expected, shell.executeQuery("SELECT * FROM bar ORDER BY id"));
+        Path partition = new Path(shell.getHiveConf().get(METASTOREWAREHOUSE.varname), "bar/year=2014");
+        Assert.assertTrue(FileSystem.get(partition.toUri(), shell.getHiveConf()).exists(partition));
+    }
+
+    @Test
+    public void tableShouldBeCreatedAsSelect() {
+        shell.execute("CREATE TABLE baz AS SELECT upper(name) AS name FROM foo");
+        Assert.assertEquals(Arrays.asList("A", "B", "C"), shell.executeQuery("SELECT name FROM baz ORDER BY name"));
+    }
+}
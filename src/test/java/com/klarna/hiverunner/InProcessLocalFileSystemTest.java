@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class InProcessLocalFileSystemTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InProcessLocalFileSystem fileSystem;
+
+    /**
+     * Reference implementation
+     */
+    private LocalFileSystem hadoopFileSystem;
+
+    @Before
+    public void setUp() throws IOException {
+        fileSystem = new InProcessLocalFileSystem();
+        fileSystem.initialize(URI.create("file:///"), new Configuration());
+        hadoopFileSystem = new LocalFileSystem();
+        hadoopFileSystem.initialize(URI.create("file:///"), new Configuration());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+        hadoopFileSystem.close();
+    }
+
+    @Test
+    public void fileStatusShouldMatchHadoopImplementation() throws IOException {
+        Path file = new Path(folder.newFile("data.csv").toURI());
+        hadoopFileSystem.setPermission(file, new FsPermission((short) 0640));
+
+        FileStatus expected = hadoopFileSystem.getFileStatus(file);
+        FileStatus actual = fileSystem.getFileStatus(file);
+        Assert.assertEquals(expected.getPath(), actual.getPath());
+        Assert.assertEquals(expected.getLen(), actual.getLen());
+        Assert.assertEquals(expected.isDirectory(), actual.isDirectory());
+        Assert.assertEquals(expected.getPermission(), actual.getPermission());
+        Assert.assertEquals(expected.getOwner(), actual.getOwner());
+        Assert.assertEquals(expected.getGroup(), actual.getGroup());
+        Assert.assertEquals(expected.getModificationTime(), actual.getModificationTime());
+    }
+
+    @Test
+    public void permissionsShouldBeSet() throws IOException {
+        Path dir = new Path(folder.getRoot().toURI().resolve("dir"));
+        Assert.assertTrue(fileSystem.mkdirs(dir, new FsPermission((short) 0751)));
+        Assert.assertEquals(new FsPermission((short) 0751), hadoopFileSystem.getFileStatus(dir).getPermission());
+
+        fileSystem.setPermission(dir, new FsPermission((short) 0700));
+        Assert.assertEquals(new FsPermission((short) 0700), hadoopFileSystem.getFileStatus(dir).getPermission());
+    }
+
+    @Test
+    public void checksumFilesShouldNotBeWritten() throws IOException {
+        try (FSDataOutputStream out = fileSystem.create(new Path(folder.getRoot().toURI().resolve("data.csv")))) {
+            out.writeBytes("1,2\n");
+        }
+        Assert.assertEquals(Arrays.asList("data.csv"), Arrays.asList(folder.getRoot().list()));
+    }
+
+    @Test
+    public void directoryShouldBeListed() throws IOException {
+        folder.newFile("a");
+        folder.newFolder("b");
+        Set<String> names = new HashSet<>();
+        for (FileStatus status : fileSystem.listStatus(new Path(folder.getRoot().toURI()))) {
+            names.add(status.getPath().getName() + (status.isDirectory() ? "/" : ""));
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b/")), names);
+    }
+
+    @Test
+    public void contextShouldUseStockFileSystemByDefault() throws IOException {
+        HiveConf conf = newContext().getHiveConf();
+        Assert.assertFalse(FileSystem.get(URI.create("file:///"), conf) instanceof InProcessLocalFileSystem);
+    }
+
+    @Test
+    public void contextShouldNotShareInProcessFileSystem() throws IOException {
+        System.setProperty(StandaloneHiveServerContext.IN_PROCESS_EXECUTION_PROPERTY, "true");
+        HiveConf conf;
+        try {
+            conf = newContext().getHiveConf();
+        } finally {
+            System.clearProperty(StandaloneHiveServerContext.IN_PROCESS_EXECUTION_PROPERTY);
+        }
+        Assert.assertTrue(FileSystem.get(URI.create("file:///"), conf) instanceof InProcessLocalFileSystem);
+        Assert.assertFalse(FileSystem.get(URI.create("file:///"), new Configuration())
+                instanceof InProcessLocalFileSystem);
+        Assert.assertFalse(FileSystem.get(URI.create("file:///"), newContext().getHiveConf())
+                instanceof InProcessLocalFileSystem);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingFileShouldNotBeFound() throws IOException {
+        fileSystem.getFileStatus(new Path(new File(folder.getRoot(), "missing").toURI()));
+    }
+
+    private StandaloneHiveServerContext newContext() throws IOException {
+        TemporaryFolder basedir = new TemporaryFolder(folder.newFolder());
+        basedir.create();
+        return new StandaloneHiveServerContext(basedir);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(StandaloneHiveRunner.class)
+public class InsertIntoTableTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE DATABASE fixtures;" +
+            "CREATE TABLE fixtures.text_table (id int, name string, day date) " +
+            "ROW FORMAT DELIMITED FIELDS TERMINATED BY ',';" +
+            "CREATE TABLE fixtures.sequence_table (id int, name string) STORED AS SEQUENCEFILE;" +
+            "CREATE TABLE fixtures.rc_table (id int, name string) STORED AS RCFILE;" +
+            "CREATE TABLE fixtures.complex_table (tags array<string>, counts map<string,int>);" +
+            "CREATE TABLE fixtures.partitioned_table (id bigint) PARTITIONED BY (year string, month int);";
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void textTable() {
+        shell.insertInto("fixtures", "text_table")
+                .addRow(1, "a", "2014-01-01")
+                .addRow("2", "b", null)
+                .commit();
+
+        Assert.assertEquals(Arrays.asList("1\ta\t2014-01-01", "2\tb\tNULL"),
+                query("SELECT * FROM fixtures.text_table"));
+    }
+
+    @Test
+    public void sequenceFileTable() {
+        shell.insertInto("fixtures", "sequence_table").addRows(rows(3)).commit();
+
+        Assert.assertEquals(Arrays.asList("0\tname0", "1\tname1", "2\tname2"),
+                query("SELECT * FROM fixtures.sequence_table"));
+    }
+
+    @Test
+    public void rcFileTable() {
+        shell.insertInto("fixtures", "rc_table").addRows(rows(1000)).commit();
+
+        Assert.assertEquals(Arrays.asList("1000"), shell.executeQuery("SELECT count(*) FROM fixtures.rc_table"));
+        Assert.assertEquals(Arrays.asList("name999"),
+                shell.executeQuery("SELECT name FROM fixtures.rc_table WHERE id = 999"));
+    }
+
+    @Test
+    public void complexTypes() {
+        shell.insertInto("fixtures", "complex_table")
+                .addRow(Arrays.asList("x", "y"), Collections.singletonMap("z", 1))
+                .commit();
+
+        Assert.assertEquals(Arrays.asList("y\t1"),
+                shell.executeQuery("SELECT tags[1], counts['z'] FROM fixtures.complex_table"));
+    }
+
+    @Test
+    public void partitionsAreAddedOnce() {
+        InsertIntoTable insert = shell.insertInto("fixtures", "partitioned_table");
+        insert.addRow(1, "2013", 12).addRow(2, "2014", 1).commit();
+        insert.addRow(3L, "2014", 1).addRow(4, "2014", 2).commit();
+
+        shell.execute("USE fixtures");
+        Assert.assertEquals(Arrays.asList("year=2013/month=12", "year=2014/month=1", "year=2014/month=2"),
+                query("SHOW PARTITIONS partitioned_table"));
+        Assert.assertEquals(Arrays.asList("2", "3", "4"),
+                query("SELECT id FROM fixtures.partitioned_table WHERE year = '2014'"));
+    }
+
+    @Test
+    public void commitWritesEachRowOnce() {
+        InsertIntoTable insert = shell.insertInto("fixtures", "text_table");
+        insert.addRow(1, "a", null).commit();
+        insert.commit();
+
+        Assert.assertEquals(Arrays.asList("1"), shell.executeQuery("SELECT count(*) FROM fixtures.text_table"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rowMustMatchColumns() {
+        shell.insertInto("fixtures", "partitioned_table").addRow(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tableMustExist() {
+        shell.insertInto("fixtures", "missing");
+    }
+
+    private List<Object[]> rows(int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[]{i, "name" + i});
+        }
+        return rows;
+    }
+
+    private List<String> query(String hql) {
+        List<String> result = shell.executeQuery(hql);
+        Collections.sort(result);
+        return result;
+    }
+}
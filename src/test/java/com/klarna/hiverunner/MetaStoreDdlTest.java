@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveProperties;
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies that DDL statements run directly in the meta store give the same tables and partitions as the
+ * statements run by the HiveServer.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class MetaStoreDdlTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE DATABASE IF NOT EXISTS db COMMENT 'test db';" +
+            "CREATE DATABASE IF NOT EXISTS db;" +
+            "CREATE TABLE foo (id int, name string) " +
+            "  PARTITIONED BY (year string, month int) " +
+            "  ROW FORMAT DELIMITED FIELDS TERMINATED BY ',';" +
+            "ALTER TABLE foo ADD PARTITION (year='2013', month=12);" +
+            "-- Merged with the statement above\n" +
+            "ALTER TABLE foo ADD PARTITION (year='2014', month=1) PARTITION (year=\"2014\", month=2);" +
+            "ALTER TABLE foo ADD IF NOT EXISTS PARTITION (year='2014', month=1) " +
+            "  PARTITION (year='2014', month=3) LOCATION '${hiveconf:hadoop.tmp.dir}/foo_2014_03';" +
+            "SET bar.table=bar;" +
+            "CREATE TABLE ${hiveconf:bar.table} LIKE foo;" +
+            "ALTER TABLE bar ADD PARTITION (year='2015', month=1);" +
+            "USE db;" +
+            "CREATE EXTERNAL TABLE baz LIKE default.foo LOCATION '${hiveconf:hadoop.tmp.dir}/baz';";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo_2014_03/data.csv")
+    private String data = "1,a\n2,b\n";
+
+    @HiveProperties
+    private Map<String, String> properties = Collections.singletonMap(MetaStoreDdl.ENABLED_PROPERTY, "true");
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void databasesAndTablesShouldBeCreated() {
+        Assert.assertEquals(Arrays.asList("db", "default"), shell.executeQuery("SHOW DATABASES"));
+        Assert.assertEquals(Arrays.asList("baz"), shell.executeQuery("SHOW TABLES"));
+        Assert.assertEquals(Arrays.asList("bar", "foo"), shell.executeQuery("SHOW TABLES IN default"));
+        Assert.assertEquals(shell.executeQuery("DESCRIBE default.foo"), shell.executeQuery("DESCRIBE baz"));
+    }
+
+    @Test
+    public void partitionsShouldBeAdded() {
+        shell.execute("USE default");
+        Assert.assertEquals(Arrays.asList("year=2013/month=12", "year=2014/month=1", "year=2014/month=2",
+                "year=2014/month=3"), shell.executeQuery("SHOW PARTITIONS foo"));
+        Assert.assertEquals(Arrays.asList("year=2015/month=1"), shell.executeQuery("SHOW PARTITIONS bar"));
+    }
+
+    @Test
+    public void partitionDataShouldBeQueried() {
+        shell.execute("USE default");
+        Assert.assertEquals(Arrays.asList("1\ta\t2014\t3", "2\tb\t2014\t3"),
+                shell.executeQuery("SELECT * FROM foo WHERE month = 3"));
+    }
+
+    @Test
+    public void partitionsShouldBeAddedInOneCall() {
+        List<Map<String, String>> partitions = new ArrayList<>();
+        for (int day = 1; day <= 100; day++) {
+            Map<String, String> partition = new java.util.HashMap<>();
+            partition.put("year", "2016");
+            partition.put("MONTH", String.valueOf(day));
+            partitions.add(partition);
+        }
+        shell.addPartitions("default", "bar", partitions);
+
+        shell.execute("USE default");
+        Assert.assertEquals(101, shell.executeQuery("SHOW PARTITIONS bar").size());
+        shell.execute("INSERT OVERWRITE TABLE bar PARTITION (year='2016', month=50) SELECT id, name FROM foo");
+        Assert.assertEquals(Arrays.asList("2"), shell.executeQuery("SELECT count(*) FROM bar WHERE year = '2016'"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompletePartitionSpecShouldBeRejected() {
+        shell.addPartitions("default", "bar", Collections.singletonList(Collections.singletonMap("year", "2017")));
+    }
+}
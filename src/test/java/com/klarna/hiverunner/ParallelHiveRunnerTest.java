@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Runs colliding test methods concurrently to verify that each of them gets an isolated HiveServer.
+ */
+@RunWith(ParallelHiveRunner.class)
+public class ParallelHiveRunnerTest {
+
+    @HiveSQL(files = {}, autoStart = false)
+    public HiveShell shell;
+
+    @Test
+    public void collisionCourseTestMethodOne() {
+        runCollisionCourse("1\n2\n3", "1", "2", "3");
+    }
+
+    @Test
+    public void collisionCourseTestMethodTwo() {
+        runCollisionCourse("9\n2\n8", "2", "8", "9");
+    }
+
+    @Test
+    public void collisionCourseTestMethodThree() {
+        runCollisionCourse("4\n5", "4", "5");
+    }
+
+    private void runCollisionCourse(String data, String... expected) {
+        Assert.assertTrue(Thread.currentThread().getName().startsWith("hiverunner-parallel-"));
+
+        shell.addResource("${hiveconf:hadoop.tmp.dir}/foo/bar/data.csv", data);
+        shell.addSetupScript("create database foo;");
+        shell.addSetupScript("" +
+                " CREATE table foo.bar(id int)" +
+                " ROW FORMAT DELIMITED FIELDS TERMINATED BY ','" +
+                " STORED AS TEXTFILE" +
+                " LOCATION '${hiveconf:hadoop.tmp.dir}/foo/bar';");
+        shell.start();
+
+        shell.execute("create table foo.baz as select * from foo.bar");
+
+        List<String> actual = shell.executeQuery("select * from foo.baz");
+        Assert.assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(actual));
+    }
+}
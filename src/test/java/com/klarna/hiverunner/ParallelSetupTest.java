@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveProperties;
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies that setup scripts give the same result when independent statements run concurrently.
+ */
+@RunWith(StandaloneHiveRunner.class)
+public class ParallelSetupTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE DATABASE db;" +
+            "CREATE TABLE db.bar (id int);" +
+            "CREATE TABLE foo (id int, name string) " +
+            "  PARTITIONED BY (year string) " +
+            "  ROW FORMAT DELIMITED FIELDS TERMINATED BY ',' " +
+            "  LOCATION '${hiveconf:hadoop.tmp.dir}/foo';" +
+            "ALTER TABLE foo ADD PARTITION (year='2013');" +
+            "ALTER TABLE foo ADD PARTITION (year='2014');" +
+            "CREATE TABLE a (id int);" +
+            "CREATE TABLE b (id int);" +
+            "CREATE TABLE c LIKE a;" +
+            "ALTER TABLE b ADD COLUMNS (name string);" +
+            "SET foo.table=d;" +
+            "CREATE TABLE ${hiveconf:foo.table} (id int);" +
+            "CREATE TABLE e (id int);" +
+            "USE db;" +
+            "CREATE TABLE baz (id int);" +
+            "CREATE TABLE qux (id int);";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/year=2014/data.csv")
+    private String data = "1,a\n2,b\n";
+
+    @HiveProperties
+    private Map<String, String> properties = Collections.singletonMap(ParallelStatementExecutor.THREADS_PROPERTY, "4");
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void tablesShouldBeCreated() {
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d", "e", "foo"), shell.executeQuery("SHOW TABLES IN default"));
+        Assert.assertEquals(Arrays.asList("bar", "baz", "qux"), shell.executeQuery("SHOW TABLES"));
+        List<String> columns = shell.executeQuery("DESCRIBE default.b");
+        Assert.assertEquals(2, columns.size());
+    }
+
+    @Test
+    public void workerSessionsShouldBeClosed() {
+        File localScratchDir = new File(shell.getHiveConf().getVar(HiveConf.ConfVars.LOCALSCRATCHDIR));
+        String[] pipeOutFiles = localScratchDir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".pipeout");
+            }
+        });
+        // Only the HiveServer session is left
+        Assert.assertEquals(Arrays.toString(pipeOutFiles), 1, pipeOutFiles.length);
+    }
+
+    @Test
+    public void partitionsShouldBeAdded() {
+        shell.execute("USE default");
+        Assert.assertEquals(Arrays.asList("year=2013", "year=2014"), shell.executeQuery("SHOW PARTITIONS foo"));
+        Assert.assertEquals(Arrays.asList("2"), shell.executeQuery("SELECT count(*) FROM foo"));
+    }
+}
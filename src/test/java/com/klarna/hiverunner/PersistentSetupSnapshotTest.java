@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import com.klarna.hiverunner.annotations.HiveSetupSnapshot;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verifies that persistent setup snapshots are reused by following test runs.
+ */
+public class PersistentSetupSnapshotTest {
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    @Test
+    public void setupShouldBeRestoredFromCacheInFollowingRuns() {
+        System.setProperty(SetupSnapshots.CACHE_DIR_PROPERTY, cacheDir.getRoot().getAbsolutePath());
+        try {
+            runCachedSetup();
+            Assert.assertEquals(1, cacheDir.getRoot().list().length);
+            Assert.assertEquals(1, countRestored());
+
+            runCachedSetup();
+            Assert.assertEquals(1, cacheDir.getRoot().list().length);
+            Assert.assertEquals(2, countRestored());
+        } finally {
+            System.clearProperty(SetupSnapshots.CACHE_DIR_PROPERTY);
+        }
+    }
+
+    private void runCachedSetup() {
+        CachedSetup.META_STORE_URLS.clear();
+        Result result = JUnitCore.runClasses(CachedSetup.class);
+        Assert.assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    }
+
+    private int countRestored() {
+        int restored = 0;
+        for (String url : CachedSetup.META_STORE_URLS) {
+            if (url.contains("snapshot_metastore")) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    @RunWith(StandaloneHiveRunner.class)
+    @HiveSetupSnapshot(persistent = true)
+    public static class CachedSetup {
+
+        private static final List<String> META_STORE_URLS = new ArrayList<>();
+
+        @HiveSetupScript
+        public String setup = "CREATE DATABASE foo; CREATE TABLE foo.bar (id int); USE foo;";
+
+        @HiveSQL(files = {})
+        public HiveShell shell;
+
+        @Test
+        public void testMethodOne() {
+            assertSetup();
+        }
+
+        @Test
+        public void testMethodTwo() {
+            assertSetup();
+        }
+
+        private void assertSetup() {
+            META_STORE_URLS.add(shell.getHiveConf().getVar(HiveConf.ConfVars.METASTORECONNECTURLKEY));
+            Assert.assertEquals(Arrays.asList("bar"), shell.executeQuery("show tables"));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveProperties;
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveServerLifecycle;
+import org.apache.commons.collections.MapUtils;
+import org.apache.hadoop.hive.service.HiveServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Verifies that test methods get separate, already started HiveServers from the pool and that test case
+ * properties are applied to them.
+ */
+@RunWith(StandaloneHiveRunner.class)
+@HiveServerLifecycle(HiveServerLifecycle.Strategy.POOLED)
+public class PooledHiveServerTest {
+
+    private static final Set<HiveServer.HiveServerHandler> CLIENTS = new HashSet<>();
+
+    @HiveProperties
+    public Map<String, String> hiveProperties = MapUtils.putAll(new HashMap(), new Object[]{
+            "my.schema", "bar",
+    });
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+    private String data = "1\n2\n3";
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void testMethodOne() {
+        runInIsolation();
+    }
+
+    @Test
+    public void testMethodTwo() {
+        runInIsolation();
+    }
+
+    private void runInIsolation() {
+        Assert.assertTrue("HiveServer was reused between test methods", CLIENTS.add(shell.getClient()));
+
+        shell.execute("create database ${hiveconf:my.schema}");
+        shell.execute("create table bar.foo (i int) location '${hiveconf:hadoop.tmp.dir}/foo'");
+
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), shell.executeQuery("select * from bar.foo"));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.*;
+
+@RunWith(ProductionOptimizerHiveRunner.class)
+public class ProductionOptimizerTest {
+
+    @HiveSetupScript
+    private String setup =
+            "CREATE TABLE foo (id string, value string) " +
+            "ROW FORMAT DELIMITED FIELDS TERMINATED BY ',' " +
+            "LOCATION '${hiveconf:hadoop.tmp.dir}/foo';" +
+            "CREATE TABLE bar (id string, value string) " +
+            "ROW FORMAT DELIMITED FIELDS TERMINATED BY ',' " +
+            "LOCATION '${hiveconf:hadoop.tmp.dir}/bar';";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+    private String foo = "id1,foo1\nid2,foo2\nid3,foo3\n";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/bar/data.csv")
+    private String bar = "id1,bar1\nid3,bar3\n";
+
+    @HiveSQL(files = {})
+    private HiveShell shell;
+
+    @Test
+    public void optimizersShouldBeSwitchedOn() {
+        Assert.assertTrue(shell.getHiveConf().getBoolVar(HIVECONVERTJOIN));
+        Assert.assertTrue(shell.getHiveConf().getBoolVar(HIVESKEWJOIN));
+        Assert.assertTrue(shell.getHiveConf().getBoolVar(HIVEOPTINDEXFILTER));
+        Assert.assertTrue(shell.getHiveConf().getBoolVar(HIVEMETADATAONLYQUERIES));
+    }
+
+    @Test
+    public void joinShouldBeConvertedToMapJoin() {
+        List<String> actual = shell.executeQuery(
+                "SELECT foo.id, foo.value, bar.value FROM foo JOIN bar ON (foo.id = bar.id)");
+        Collections.sort(actual);
+        Assert.assertEquals(Arrays.asList("id1\tfoo1\tbar1", "id3\tfoo3\tbar3"), actual);
+
+        QueryProfile profile = shell.getLastQueryProfile();
+        Assert.assertTrue(profile.toString(), profile.getStageTypes().contains("MAPREDLOCAL"));
+        Assert.assertEquals(profile.toString(), 1, profile.getMapReduceJobs());
+        Assert.assertFalse(profile.toString(),
+                profile.getCounters().containsKey("org.apache.hadoop.mapreduce.TaskCounter.REDUCE_INPUT_RECORDS"));
+    }
+
+    @Test
+    public void outerJoinShouldBeConvertedToMapJoin() {
+        List<String> actual = shell.executeQuery(
+                "SELECT foo.id, bar.value FROM foo LEFT OUTER JOIN bar ON (foo.id = bar.id)");
+        Collections.sort(actual);
+        Assert.assertEquals(Arrays.asList("id1\tbar1", "id2\tNULL", "id3\tbar3"), actual);
+        Assert.assertEquals(1, shell.getLastQueryProfile().getMapReduceJobs());
+    }
+}
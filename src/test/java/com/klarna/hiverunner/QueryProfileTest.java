@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(StandaloneHiveRunner.class)
+public class QueryProfileTest {
+
+    @HiveSetupScript
+    private String setup = "CREATE TABLE foo (id int) LOCATION '${hiveconf:hadoop.tmp.dir}/foo'";
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+    private String data = "1\n2\n3\n";
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell shell;
+
+    @Test
+    public void aggregationShouldLaunchOneMapReduceJob() {
+        shell.start();
+        Assert.assertEquals(Arrays.asList("3"), shell.executeQuery("SELECT count(*) FROM foo"));
+
+        QueryProfile profile = shell.getLastQueryProfile();
+        Assert.assertEquals("SELECT count(*) FROM foo", profile.getStatement());
+        Assert.assertEquals(Arrays.asList("MAPRED"), profile.getStageTypes());
+        Assert.assertEquals(1, profile.getMapReduceJobs());
+        Assert.assertEquals(3, profile.getRowsRead());
+        Assert.assertEquals(1, profile.getRowsFetched());
+        Assert.assertTrue(profile.getCounters().containsKey(QueryProfile.MAP_INPUT_RECORDS));
+        Assert.assertTrue(profile.getTotalMillis() >= profile.getExecutionMillis());
+    }
+
+    @Test
+    public void fetchShouldNotLaunchMapReduceJobs() {
+        shell.start();
+        shell.executeQuery("SELECT * FROM foo");
+
+        QueryProfile profile = shell.getLastQueryProfile();
+        Assert.assertEquals(Collections.emptyList(), profile.getStageTypes());
+        Assert.assertEquals(0, profile.getMapReduceJobs());
+        Assert.assertEquals(3, profile.getRowsFetched());
+    }
+
+    @Test
+    public void lastStatementOfScriptShouldBeProfiled() {
+        shell.start();
+        shell.execute("CREATE TABLE bar (id int); DROP TABLE bar");
+
+        QueryProfile profile = shell.getLastQueryProfile();
+        Assert.assertEquals("DROP TABLE bar", profile.getStatement());
+        Assert.assertEquals(Arrays.asList("DDL"), profile.getStageTypes());
+        Assert.assertEquals(-1, profile.getRowsFetched());
+    }
+
+    @Test
+    public void commandsShouldNotBeProfiledAsQueries() {
+        shell.start();
+        shell.executeQuery("SELECT * FROM foo");
+        shell.execute("SET x=y");
+
+        QueryProfile profile = shell.getLastQueryProfile();
+        Assert.assertEquals("SET x=y", profile.getStatement());
+        Assert.assertEquals(Collections.emptyList(), profile.getStageTypes());
+        Assert.assertEquals(0, profile.getCompileMillis());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveServerLifecycle;
+import org.apache.hadoop.hive.service.HiveServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Verifies that the HiveServer is reused between test methods and that all databases, tables, properties and
+ * resource files created by one test method are gone before the next one starts.
+ */
+@RunWith(StandaloneHiveRunner.class)
+@HiveServerLifecycle(HiveServerLifecycle.Strategy.RESET)
+public class ResetBetweenTestMethodsTest {
+
+    private static final Set<HiveServer.HiveServerHandler> CLIENTS = new HashSet<>();
+
+    @HiveSQL(files = {}, autoStart = false)
+    public HiveShell shell;
+
+    @Test
+    public void collisionCourseTestMethodOne() {
+        runCollisionCourse("1\n2\n3", "1", "2", "3");
+    }
+
+    @Test
+    public void collisionCourseTestMethodTwo() {
+        runCollisionCourse("9\n2\n8", "2", "8", "9");
+    }
+
+    private void runCollisionCourse(String data, String... expected) {
+        shell.addResource("${hiveconf:hadoop.tmp.dir}/foo/bar/data.csv", data);
+        shell.addSetupScript("create database foo;");
+        shell.addSetupScript("" +
+                " CREATE table foo.bar(id int)" +
+                " ROW FORMAT DELIMITED FIELDS TERMINATED BY ','" +
+                " STORED AS TEXTFILE" +
+                " LOCATION '${hiveconf:hadoop.tmp.dir}/foo/bar';");
+        shell.start();
+
+        // Tables in the default database should be dropped as well
+        Assert.assertEquals(Collections.emptyList(), shell.executeQuery("show tables"));
+        shell.execute("create table baz (i int)");
+
+        Assert.assertEquals(Arrays.asList("default", "foo"), sorted(shell.executeQuery("show databases")));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(expected)),
+                new HashSet<>(shell.executeQuery("select * from foo.bar")));
+
+        // Properties set by one test method should not leak into the next
+        Assert.assertNull(shell.getHiveConf().get("reset.test.property"));
+        shell.execute("set reset.test.property=foo");
+
+        shell.execute("USE foo");
+
+        CLIENTS.add(shell.getClient());
+        Assert.assertEquals(1, CLIENTS.size());
+    }
+
+    private List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+}
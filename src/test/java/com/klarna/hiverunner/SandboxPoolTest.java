@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class SandboxPoolTest {
+
+    @Rule
+    public TemporaryFolder parent = new TemporaryFolder();
+
+    private SandboxPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new SandboxPool(parent.getRoot().toPath());
+    }
+
+    @Test
+    public void releasedSandboxShouldBeRecycledEmpty() throws Exception {
+        TemporaryFolder sandbox = pool.newTemporaryFolder();
+        sandbox.create();
+        File root = sandbox.getRoot();
+        Files.write(sandbox.newFolder("warehouse", "foo").toPath().resolve("data.csv"), "1,2\n".getBytes());
+        sandbox.newFile("history");
+        sandbox.delete();
+        pool.awaitReleased();
+
+        TemporaryFolder recycled = pool.newTemporaryFolder();
+        recycled.create();
+        Assert.assertEquals(root, recycled.getRoot());
+        Assert.assertEquals(0, root.list().length);
+        Assert.assertTrue(recycled.newFolder("warehouse").isDirectory());
+    }
+
+    @Test
+    public void sandboxesInUseShouldNotBeShared() throws Exception {
+        TemporaryFolder first = pool.newTemporaryFolder();
+        first.create();
+        TemporaryFolder second = pool.newTemporaryFolder();
+        second.create();
+        Assert.assertNotEquals(first.getRoot(), second.getRoot());
+        Assert.assertEquals(pool.getRoot().toFile(), first.getRoot().getParentFile());
+    }
+
+    @Test
+    public void sandboxShouldBeReleasedOnce() throws Exception {
+        TemporaryFolder sandbox = pool.newTemporaryFolder();
+        sandbox.create();
+        sandbox.delete();
+        sandbox.delete();
+        pool.awaitReleased();
+
+        TemporaryFolder first = pool.newTemporaryFolder();
+        first.create();
+        TemporaryFolder second = pool.newTemporaryFolder();
+        second.create();
+        Assert.assertNotEquals(first.getRoot(), second.getRoot());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rootShouldNotBeAvailableBeforeCreate() {
+        pool.newTemporaryFolder().getRoot();
+    }
+}
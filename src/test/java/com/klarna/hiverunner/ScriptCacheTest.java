@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+public class ScriptCacheTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void unchangedScriptShouldOnlyBeReadAndSplitOnce() throws IOException {
+        ScriptCache cache = new ScriptCache(1000);
+        Path script = createScript("foo.sql", "select 1;select 2");
+
+        String first = cache.read(script, UTF_8);
+        Assert.assertSame(first, cache.read(script, UTF_8));
+
+        Assert.assertEquals(Arrays.asList("select 1", "select 2"), cache.split(first));
+        Assert.assertSame(cache.split(first), cache.split(first));
+    }
+
+    @Test
+    public void changedScriptShouldBeReadAgain() throws IOException {
+        ScriptCache cache = new ScriptCache(1000);
+        Path script = createScript("foo.sql", "select 1");
+        Assert.assertEquals("select 1", cache.read(script, UTF_8));
+
+        Files.write(script, "select 2".getBytes(UTF_8));
+        Files.setLastModifiedTime(script, FileTime.fromMillis(Files.getLastModifiedTime(script).toMillis() + 1000));
+        Assert.assertEquals("select 2", cache.read(script, UTF_8));
+    }
+
+    @Test
+    public void scriptsNotReadThroughCacheShouldBeSplit() {
+        ScriptCache cache = new ScriptCache(1000);
+        String script = "select 1;select 2";
+        Assert.assertEquals(Arrays.asList("select 1", "select 2"), cache.split(script));
+        Assert.assertNotSame(cache.split(script), cache.split(script));
+    }
+
+    @Test
+    public void leastRecentlyUsedScriptsShouldBeEvicted() throws IOException {
+        ScriptCache cache = new ScriptCache(10);
+        Path foo = createScript("foo.sql", "select foo");
+        Path bar = createScript("bar.sql", "select bar");
+
+        String fooScript = cache.read(foo, UTF_8);
+        cache.read(bar, UTF_8);
+
+        Assert.assertNotSame(cache.split(fooScript), cache.split(fooScript));
+        Assert.assertNotSame(fooScript, cache.read(foo, UTF_8));
+    }
+
+    private Path createScript(String name, String content) throws IOException {
+        Path script = tempFolder.newFile(name).toPath();
+        Files.write(script, content.getBytes(UTF_8));
+        return script;
+    }
+}
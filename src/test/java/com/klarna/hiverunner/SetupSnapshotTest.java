@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import com.klarna.hiverunner.annotations.HiveSetupSnapshot;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.thrift.TException;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Verifies that the setup is only executed for the first test method and that all following test methods start
+ * from an isolated copy of the same meta store, sand box and session.
+ */
+@RunWith(StandaloneHiveRunner.class)
+@HiveSetupSnapshot
+public class SetupSnapshotTest {
+
+    private static final List<String> META_STORE_URLS = Collections.synchronizedList(new ArrayList<String>());
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/bar/data.csv")
+    public String data = "1\n2\n3";
+
+    @HiveSetupScript
+    public String setup = "" +
+            "CREATE DATABASE foo;" +
+            " CREATE TABLE foo.bar(id int)" +
+            " ROW FORMAT DELIMITED FIELDS TERMINATED BY ','" +
+            " STORED AS TEXTFILE" +
+            " LOCATION '${hiveconf:hadoop.tmp.dir}/foo/bar';";
+
+    @HiveSQL(files = {"setupSnapshotTest/load_managed_table.sql"})
+    public HiveShell shell;
+
+    @AfterClass
+    public static void setupShouldOnlyBeExecutedOnce() {
+        Assert.assertEquals(3, META_STORE_URLS.size());
+        Assert.assertEquals(3, new HashSet<>(META_STORE_URLS).size());
+        int restored = 0;
+        for (String url : META_STORE_URLS) {
+            if (url.contains("snapshot_metastore")) {
+                restored++;
+            }
+        }
+        Assert.assertEquals(2, restored);
+    }
+
+    @Test
+    public void collisionCourseTestMethodOne() throws TException {
+        runCollisionCourse();
+    }
+
+    @Test
+    public void collisionCourseTestMethodTwo() throws TException {
+        runCollisionCourse();
+    }
+
+    @Test
+    public void collisionCourseTestMethodThree() throws TException {
+        runCollisionCourse();
+    }
+
+    private void runCollisionCourse() throws TException {
+        HiveConf hiveConf = shell.getHiveConf();
+        META_STORE_URLS.add(hiveConf.getVar(HiveConf.ConfVars.METASTORECONNECTURLKEY));
+
+        // Session state of the setup
+        Assert.assertEquals(Arrays.asList("bar", "managed"), sorted(shell.executeQuery("show tables")));
+        Assert.assertEquals("snapshotted", hiveConf.get("snapshot.test.property"));
+
+        // Paths should point into the sand box of this test method
+        String sandBox = shell.getBaseDir().getRoot().getAbsolutePath();
+        Assert.assertTrue(shell.getClient().get_table("foo", "bar").getSd().getLocation().contains(sandBox));
+        Assert.assertTrue(shell.getClient().get_table("foo", "managed").getSd().getLocation().contains(sandBox));
+
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), sorted(shell.executeQuery("select * from bar")));
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), sorted(shell.executeQuery("select * from managed")));
+
+        // Changes should not leak into the following test methods
+        shell.execute("DROP TABLE managed");
+        shell.execute("CREATE TABLE baz (i int)");
+        shell.execute("set snapshot.test.property=changed");
+    }
+
+    private List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatementDependenciesTest {
+
+    @Test
+    public void statementsOtherThanDdlShouldBeBarriers() {
+        assertBarrier("USE foo");
+        assertBarrier("SET hive.exec.dynamic.partition=true");
+        assertBarrier("INSERT OVERWRITE TABLE foo SELECT * FROM bar");
+        assertBarrier("CREATE TABLE foo AS SELECT * FROM bar");
+        assertBarrier("CREATE TABLE foo STORED AS RCFILE AS SELECT * FROM bar");
+        assertBarrier("CREATE VIEW foo AS SELECT * FROM bar");
+        assertBarrier("DROP DATABASE foo CASCADE");
+    }
+
+    @Test
+    public void tablesShouldBeIndependent() {
+        assertIndependent("CREATE TABLE foo (id int)", "CREATE TABLE bar (id int) STORED AS SEQUENCEFILE");
+        assertIndependent("ALTER TABLE foo ADD PARTITION (year='2013')", "ALTER TABLE bar ADD PARTITION (year='2013')");
+        assertIndependent("CREATE TABLE db.foo (id int)", "CREATE TABLE foo (id int)");
+    }
+
+    @Test
+    public void sameTableShouldConflict() {
+        assertConflict("CREATE TABLE foo (id int)", "ALTER TABLE foo ADD PARTITION (year='2013')");
+        assertConflict("CREATE TABLE Foo (id int)", "DROP TABLE IF EXISTS `default`.foo");
+        assertConflict("CREATE TABLE foo LIKE bar", "CREATE TABLE bar (id int)");
+        assertConflict("ALTER TABLE foo RENAME TO baz", "CREATE TABLE baz (id int)");
+        assertConflict("LOAD DATA INPATH '/tmp/data.csv' INTO TABLE foo", "ALTER TABLE foo ADD PARTITION (a='b')");
+    }
+
+    @Test
+    public void databaseShouldBeCreatedBeforeItsTables() {
+        assertConflict("CREATE DATABASE IF NOT EXISTS db", "CREATE TABLE db.foo (id int)");
+        assertIndependent("CREATE DATABASE db", "CREATE TABLE foo (id int)");
+    }
+
+    @Test
+    public void nestedLocationsShouldConflict() {
+        assertConflict("CREATE TABLE foo (id int) LOCATION '/tmp/foo'",
+                "CREATE EXTERNAL TABLE bar (id int) LOCATION 'file:///tmp/foo/bar/'");
+        assertConflict("LOAD DATA INPATH '/tmp/foo/data.csv' INTO TABLE bar",
+                "CREATE TABLE foo (id int) LOCATION '/tmp/foo'");
+        assertIndependent("CREATE TABLE foo (id int) LOCATION '/tmp/foo'",
+                "CREATE TABLE bar (id int) LOCATION '/tmp/foobar'");
+        assertIndependent("LOAD DATA LOCAL INPATH '/tmp/foo/data.csv' INTO TABLE bar",
+                "CREATE TABLE foo (id int) LOCATION '/tmp/foo'");
+    }
+
+    @Test
+    public void leadingCommentsShouldBeIgnored() {
+        assertIndependent("-- The foo table\nCREATE TABLE foo (id int)", "CREATE TABLE bar (id int)");
+    }
+
+    private void assertBarrier(String statement) {
+        Assert.assertNull(statement, StatementDependencies.analyze(statement, "default"));
+    }
+
+    private void assertConflict(String statement, String other) {
+        Assert.assertTrue(analyze(statement).conflictsWith(analyze(other)));
+        Assert.assertTrue(analyze(other).conflictsWith(analyze(statement)));
+    }
+
+    private void assertIndependent(String statement, String other) {
+        Assert.assertFalse(analyze(statement).conflictsWith(analyze(other)));
+        Assert.assertFalse(analyze(other).conflictsWith(analyze(statement)));
+    }
+
+    private StatementDependencies analyze(String statement) {
+        StatementDependencies dependencies = StatementDependencies.analyze(statement, "default");
+        Assert.assertNotNull(statement, dependencies);
+        return dependencies;
+    }
+}
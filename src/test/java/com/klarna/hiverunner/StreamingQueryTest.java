@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveSQL;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(StandaloneHiveRunner.class)
+public class StreamingQueryTest {
+
+    private static final int ROWS = 2500;
+
+    @HiveSQL(files = {}, autoStart = false)
+    private HiveShell shell;
+
+    @Before
+    public void createTable() throws IOException {
+        OutputStream data = shell.getResourceOutputStream("${hiveconf:hadoop.tmp.dir}/foo/data.csv");
+        for (int i = 0; i < ROWS; i++) {
+            data.write((i + "\n").getBytes());
+        }
+        shell.addSetupScript("CREATE TABLE foo (i int) LOCATION '${hiveconf:hadoop.tmp.dir}/foo'");
+        shell.start();
+    }
+
+    @Test
+    public void streamedResultShouldEqualFetchedResult() {
+        List<String> streamed = new ArrayList<>();
+        ResultCursor cursor = shell.executeQueryStreaming("SELECT * FROM foo", 100);
+        while (cursor.hasNext()) {
+            streamed.add(cursor.next());
+        }
+        Assert.assertFalse(cursor.hasNext());
+
+        Assert.assertEquals(ROWS, streamed.size());
+        Assert.assertEquals(shell.executeQuery("SELECT * FROM foo"), streamed);
+    }
+
+    @Test
+    public void batchSizeDividingResultShouldNotYieldEmptyRows() {
+        ResultCursor cursor = shell.executeQueryStreaming("SELECT * FROM foo", ROWS / 5);
+        int count = 0;
+        while (cursor.hasNext()) {
+            Assert.assertNotNull(cursor.next());
+            count++;
+        }
+        Assert.assertEquals(ROWS, count);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cursorShouldBeClosedByFollowingStatement() {
+        ResultCursor cursor = shell.executeQueryStreaming("SELECT * FROM foo");
+        Assert.assertEquals("0", cursor.next());
+
+        shell.executeQuery("SHOW TABLES");
+
+        cursor.hasNext();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedCursorShouldNotBeIterated() {
+        ResultCursor cursor = shell.executeQueryStreaming("SELECT * FROM foo");
+        cursor.close();
+        cursor.close();
+        cursor.hasNext();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveProperties;
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runners.model.InitializationError;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TestClassMetadataTest {
+
+    @Test
+    public void fieldsShouldBeFound() throws InitializationError {
+        TestClassMetadata metadata = TestClassMetadata.create(ValidTestCase.class);
+
+        Assert.assertEquals("shell", metadata.getHiveShellField().getName());
+        Assert.assertFalse(metadata.isAutoStart());
+        Assert.assertEquals(1, metadata.getScriptsUnderTest().size());
+        Assert.assertEquals(1, metadata.getSetupScriptFields().size());
+        Assert.assertEquals(TestClassMetadata.FieldType.FILE, metadata.getResourceFields().get(0).getType());
+        Assert.assertEquals(TestClassMetadata.FieldType.MAP, metadata.getPropertiesFields().get(0).getType());
+    }
+
+    @Test
+    public void fieldsShouldBeReadAndSet() throws InitializationError {
+        TestClassMetadata metadata = TestClassMetadata.create(ValidTestCase.class);
+        ValidTestCase testCase = new ValidTestCase();
+
+        Assert.assertEquals("CREATE TABLE foo (id int)",
+                metadata.getSetupScriptFields().get(0).get(testCase, String.class));
+
+        HiveShell shell = newHiveShell();
+        metadata.getHiveShellField().set(testCase, shell);
+        Assert.assertSame(shell, testCase.getShell());
+    }
+
+    @Test
+    public void inheritedFieldsShouldBeFound() throws InitializationError {
+        TestClassMetadata metadata = TestClassMetadata.create(InheritingTestCase.class);
+        InheritingTestCase testCase = new InheritingTestCase();
+
+        Assert.assertEquals(2, metadata.getSetupScriptFields().size());
+        HiveShell shell = newHiveShell();
+        metadata.getHiveShellField().set(testCase, shell);
+        Assert.assertSame(shell, testCase.getShell());
+    }
+
+    @Test
+    public void allErrorsShouldBeReportedAtOnce() {
+        try {
+            TestClassMetadata.create(InvalidTestCase.class);
+            Assert.fail("Expected InitializationError");
+        } catch (InitializationError e) {
+            List<Throwable> causes = e.getCauses();
+            Assert.assertEquals(causes.toString(), 4, causes.size());
+        }
+    }
+
+    @Test(expected = InitializationError.class)
+    public void runnerShouldFailAtClassLoad() throws InitializationError {
+        new StandaloneHiveRunner(InvalidTestCase.class);
+    }
+
+    private HiveShell newHiveShell() {
+        return (HiveShell) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HiveShell.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+    }
+
+    public static class ValidTestCase {
+
+        @HiveSQL(files = {"ctasTest/ctas.sql"}, autoStart = false)
+        private HiveShell shell;
+
+        @HiveSetupScript
+        private final String setup = "CREATE TABLE foo (id int)";
+
+        @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+        private File data = new File("data.csv");
+
+        @HiveProperties
+        private Map<String, String> properties = Collections.emptyMap();
+
+        HiveShell getShell() {
+            return shell;
+        }
+    }
+
+    public static class InheritingTestCase extends ValidTestCase {
+
+        @HiveSetupScript
+        private String moreSetup = "CREATE TABLE bar (id int)";
+    }
+
+    public static class InvalidTestCase {
+
+        @HiveSQL(files = {"missing.sql"})
+        private HiveShell shell;
+
+        @HiveSQL(files = {})
+        private HiveShell otherShell;
+
+        @HiveSetupScript
+        private Integer setup = 1;
+
+        @HiveResource(targetFile = "data.csv")
+        private List<String> data = Arrays.asList("a");
+
+        @HiveProperties
+        private String properties = "foo=bar";
+    }
+}
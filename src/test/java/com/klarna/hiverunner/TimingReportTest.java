@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Verifies that the phase timings of a test class are reported when enabled.
+ */
+public class TimingReportTest {
+
+    @Rule
+    public TemporaryFolder reportDir = new TemporaryFolder();
+
+    @Test
+    public void phaseTimingsShouldBeReportedPerTestMethod() throws IOException {
+        System.setProperty(TimingReport.ENABLED_PROPERTY, "true");
+        System.setProperty(TimingReport.REPORT_DIR_PROPERTY, reportDir.getRoot().getAbsolutePath());
+        try {
+            Result result = JUnitCore.runClasses(TimedTest.class);
+            Assert.assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        } finally {
+            System.clearProperty(TimingReport.ENABLED_PROPERTY);
+            System.clearProperty(TimingReport.REPORT_DIR_PROPERTY);
+        }
+
+        Path csv = reportDir.getRoot().toPath().resolve(TimedTest.class.getName() + ".csv");
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        Assert.assertEquals("test_class,test_method,phase,count,total_ms,max_ms,slowest", lines.get(0));
+
+        Set<String> phases = new HashSet<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split(",");
+            Assert.assertEquals("\"testMethod\"", columns[1]);
+            phases.add(columns[2]);
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("SERVER_INIT", "SETUP_SCRIPTS", "RESOURCES",
+                "SCRIPTS_UNDER_TEST", "STATEMENT", "TEAR_DOWN")), phases);
+
+        String json = new String(Files.readAllBytes(
+                reportDir.getRoot().toPath().resolve(TimedTest.class.getName() + ".json")), StandardCharsets.UTF_8);
+        Assert.assertTrue(json, json.contains("\"testMethod\":\"testMethod\""));
+        Assert.assertTrue(json, json.contains("{\"phase\":\"STATEMENT\",\"count\":2,"));
+    }
+
+    @Test
+    public void testMethodsOfAllClassesShouldBeReportedSortedByTotalTime() throws IOException {
+        System.setProperty(TimingReport.ENABLED_PROPERTY, "true");
+        System.setProperty(TimingReport.REPORT_DIR_PROPERTY, reportDir.getRoot().getAbsolutePath());
+        try {
+            Result result = JUnitCore.runClasses(TimedTest.class, OtherTimedTest.class, TimedTest.class);
+            Assert.assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        } finally {
+            System.clearProperty(TimingReport.ENABLED_PROPERTY);
+            System.clearProperty(TimingReport.REPORT_DIR_PROPERTY);
+        }
+
+        Path csv = reportDir.getRoot().toPath().resolve(TimingReport.SUITE_REPORT + ".csv");
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        Assert.assertEquals("test_class,test_method,total_ms,server_init_ms,setup_scripts_ms,resources_ms,"
+                + "scripts_under_test_ms,statement_ms,tear_down_ms", lines.get(0));
+
+        // The second run of TimedTest replaces the rows of the first
+        Set<String> tests = new HashSet<>();
+        double previousTotal = Double.MAX_VALUE;
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split(",");
+            tests.add(columns[0] + "#" + columns[1]);
+            double total = Double.parseDouble(columns[2]);
+            Assert.assertTrue(lines.toString(), total > 0 && total <= previousTotal);
+            Assert.assertTrue(lines.toString(), total >= Double.parseDouble(columns[3]));
+            previousTotal = total;
+        }
+        Assert.assertEquals(lines.size() - 1, tests.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(
+                "\"" + TimedTest.class.getName() + "\"#\"testMethod\"",
+                "\"" + OtherTimedTest.class.getName() + "\"#\"first\"",
+                "\"" + OtherTimedTest.class.getName() + "\"#\"second\"")), tests);
+
+        String json = new String(Files.readAllBytes(
+                reportDir.getRoot().toPath().resolve(TimingReport.SUITE_REPORT + ".json")), StandardCharsets.UTF_8);
+        Assert.assertTrue(json, json.contains("\"testMethod\":\"first\",\"totalMillis\":"));
+        Assert.assertTrue(json, json.contains("\"phases\":{\"SERVER_INIT\":"));
+    }
+
+    @Test
+    public void nothingShouldBeReportedUnlessEnabled() {
+        System.setProperty(TimingReport.REPORT_DIR_PROPERTY, reportDir.getRoot().getAbsolutePath());
+        try {
+            Result result = JUnitCore.runClasses(TimedTest.class);
+            Assert.assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        } finally {
+            System.clearProperty(TimingReport.REPORT_DIR_PROPERTY);
+        }
+        Assert.assertEquals(0, reportDir.getRoot().list().length);
+    }
+
+    @RunWith(StandaloneHiveRunner.class)
+    public static class TimedTest {
+
+        @HiveSetupScript
+        public String setup = "CREATE DATABASE foo";
+
+        @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+        public String data = "1";
+
+        @HiveSQL(files = {})
+        public HiveShell shell;
+
+        @Test
+        public void testMethod() {
+            shell.execute("CREATE TABLE foo.bar (id int)");
+        }
+    }
+
+    @RunWith(StandaloneHiveRunner.class)
+    public static class OtherTimedTest {
+
+        @HiveSQL(files = {})
+        public HiveShell shell;
+
+        @Test
+        public void first() {
+            shell.execute("CREATE TABLE foo (id int)");
+        }
+
+        @Test
+        public void second() {
+        }
+    }
+}
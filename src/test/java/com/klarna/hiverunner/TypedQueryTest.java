@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner;
+
+import com.klarna.hiverunner.annotations.HiveResource;
+import com.klarna.hiverunner.annotations.HiveSQL;
+import com.klarna.hiverunner.annotations.HiveSetupScript;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(StandaloneHiveRunner.class)
+public class TypedQueryTest {
+
+    @HiveResource(targetFile = "${hiveconf:hadoop.tmp.dir}/foo/data.csv")
+    public String data = "" +
+            "1,10000000000,1.5,true,foo,12.34,2013-11-07 12:00:00\n" +
+            ",,,,bar,,\n";
+
+    @HiveSetupScript
+    public String setup = "" +
+            "CREATE TABLE foo (i int, l bigint, d double, b boolean, s string, dec decimal, t timestamp)" +
+            " ROW FORMAT DELIMITED FIELDS TERMINATED BY ','" +
+            " LOCATION '${hiveconf:hadoop.tmp.dir}/foo'";
+
+    @HiveSQL(files = {})
+    public HiveShell shell;
+
+    @Test
+    public void valuesShouldBeTypedAfterSchema() {
+        List<Object[]> rows = shell.executeQueryTyped("SELECT * FROM foo WHERE s = 'foo'");
+        Assert.assertEquals(1, rows.size());
+        Assert.assertArrayEquals(new Object[]{
+                1, 10000000000L, 1.5d, true, "foo", new BigDecimal("12.34"), Timestamp.valueOf("2013-11-07 12:00:00")
+        }, rows.get(0));
+    }
+
+    @Test
+    public void nullValuesShouldBeNull() {
+        List<Object[]> rows = shell.executeQueryTyped("SELECT * FROM foo WHERE s = 'bar'");
+        Assert.assertArrayEquals(new Object[]{null, null, null, null, "bar", null, null}, rows.get(0));
+    }
+
+    @Test
+    public void stringNullShouldBeKept() {
+        List<Object[]> rows = shell.executeQueryTyped("SELECT 'NULL', s, i FROM foo WHERE s = 'bar'");
+        Assert.assertArrayEquals(new Object[]{"NULL", "bar", null}, rows.get(0));
+    }
+
+    @Test
+    public void tabsInStringsShouldBeKept() {
+        List<Object[]> rows = shell.executeQueryTyped(
+                "SELECT i, concat(s, '\\t', s), b FROM foo WHERE s = 'foo'");
+        Assert.assertArrayEquals(new Object[]{1, "foo\tfoo", true}, rows.get(0));
+    }
+
+    @Test
+    public void tabsInSingleColumnShouldBeKept() {
+        List<Object[]> rows = shell.executeQueryTyped("SELECT concat(s, '\\t\\t', s) FROM foo WHERE s = 'foo'");
+        Assert.assertArrayEquals(new Object[]{"foo\t\tfoo"}, rows.get(0));
+    }
+
+    @Test
+    public void aggregatesShouldBeTyped() {
+        List<Object[]> rows = shell.executeQueryTyped("SELECT count(*), max(i) FROM foo");
+        Assert.assertArrayEquals(new Object[]{2L, 1}, rows.get(0));
+    }
+
+    @Test
+    public void statementsWithoutResultShouldYieldNoRows() {
+        Assert.assertEquals(Collections.emptyList(), shell.executeQueryTyped("CREATE TABLE bar (i int)"));
+    }
+}
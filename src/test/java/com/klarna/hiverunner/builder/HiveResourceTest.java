@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HiveResourceTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void fileResourceShouldBeCopiedWithoutBuffering() throws IOException {
+        Path source = tempFolder.newFile("source.csv").toPath();
+        Files.write(source, "1\n2\n3".getBytes());
+
+        HiveResource resource = new HiveResource("target.csv", source);
+
+        Path target = tempFolder.getRoot().toPath().resolve("target.csv");
+        resource.materialize(target);
+        Assert.assertEquals("1\n2\n3", new String(Files.readAllBytes(target)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fileResourceShouldNotExposeBuffer() throws IOException {
+        new HiveResource("target.csv", tempFolder.newFile("source.csv").toPath()).getOutputStream();
+    }
+
+    @Test
+    public void stringResourceShouldBeWrittenFromBuffer() throws IOException {
+        HiveResource resource = new HiveResource("target.csv", "foo,bar");
+
+        Path target = tempFolder.getRoot().toPath().resolve("target.csv");
+        resource.materialize(target);
+        Assert.assertEquals("foo,bar", new String(Files.readAllBytes(target)));
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void existingTargetFileShouldNotBeOverwritten() throws IOException {
+        Path source = tempFolder.newFile("source.csv").toPath();
+        new HiveResource("target.csv", source).materialize(tempFolder.newFile("target.csv").toPath());
+    }
+}
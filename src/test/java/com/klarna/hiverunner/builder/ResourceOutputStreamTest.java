@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class ResourceOutputStreamTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void smallResourceShouldBeKeptInMemory() throws IOException {
+        ResourceOutputStream out = new ResourceOutputStream(tempFolder.getRoot().toPath(), 100);
+        out.write("foo".getBytes());
+        out.write(',');
+        out.write("bar".getBytes());
+
+        Path target = tempFolder.getRoot().toPath().resolve("target.csv");
+        out.materialize(target);
+
+        Assert.assertEquals("foo,bar", new String(Files.readAllBytes(target)));
+        Assert.assertEquals(Arrays.asList("target.csv"), Arrays.asList(tempFolder.getRoot().list()));
+    }
+
+    @Test
+    public void largeResourceShouldBeSpilledToDiskAndMoved() throws IOException {
+        Path spillDir = tempFolder.newFolder("spill").toPath();
+        ResourceOutputStream out = new ResourceOutputStream(spillDir, 100);
+
+        byte[] expected = new byte[100000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+            out.write(expected[i]);
+        }
+        Assert.assertEquals(1, spillDir.toFile().list().length);
+
+        Path target = tempFolder.getRoot().toPath().resolve("target.bin");
+        out.materialize(target);
+
+        Assert.assertArrayEquals(expected, Files.readAllBytes(target));
+        Assert.assertEquals(0, spillDir.toFile().list().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void singleByteWriteShouldNotBeAllowedAfterMaterialization() throws IOException {
+        ResourceOutputStream out = new ResourceOutputStream(tempFolder.getRoot().toPath(), 100);
+        out.materialize(tempFolder.getRoot().toPath().resolve("target.csv"));
+        out.write('a');
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bulkWriteShouldNotBeAllowedAfterMaterialization() throws IOException {
+        ResourceOutputStream out = new ResourceOutputStream(tempFolder.getRoot().toPath(), 100);
+        out.materialize(tempFolder.getRoot().toPath().resolve("target.csv"));
+        out.write("a".getBytes());
+    }
+
+    @Test
+    public void closeShouldBeAllowedAfterMaterialization() throws IOException {
+        ResourceOutputStream out = new ResourceOutputStream(tempFolder.getRoot().toPath(), 100);
+        out.write("foo".getBytes());
+        out.materialize(tempFolder.getRoot().toPath().resolve("target.csv"));
+        out.close();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Klarna AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klarna.hiverunner.builder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ResourceWriterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void resourcesShouldBeWrittenInParallel() throws IOException {
+        ResourceWriter writer = new ResourceWriter(4, new Configuration());
+        for (int i = 0; i < 100; i++) {
+            String targetFile = target("foo/year=" + (i % 10) + "/" + i + ".csv");
+            writer.add(new HiveResource("data.csv", "row" + i), targetFile, false);
+        }
+        writer.write();
+
+        for (int i = 0; i < 100; i++) {
+            Path file = tempFolder.getRoot().toPath().resolve("foo/year=" + (i % 10) + "/" + i + ".csv");
+            Assert.assertEquals("row" + i, new String(Files.readAllBytes(file)));
+        }
+    }
+
+    @Test
+    public void failuresShouldBeAggregated() throws IOException {
+        tempFolder.newFolder("foo");
+        tempFolder.newFile("foo/a.csv");
+        tempFolder.newFile("foo/b.csv");
+
+        ResourceWriter writer = new ResourceWriter(4, new Configuration());
+        writer.add(new HiveResource("a.csv", "a"), target("foo/a.csv"), false);
+        writer.add(new HiveResource("b.csv", "b"), target("foo/b.csv"), false);
+        writer.add(new HiveResource("c.csv", "c"), target("foo/c.csv"), false);
+        try {
+            writer.write();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Failed to create 2 resource target files"));
+            Assert.assertEquals(1, e.getSuppressed().length);
+        }
+        Assert.assertTrue(Files.exists(tempFolder.getRoot().toPath().resolve("foo/c.csv")));
+    }
+
+    @Test
+    public void singleThreadShouldStopAtFirstFailure() throws IOException {
+        tempFolder.newFolder("foo");
+        tempFolder.newFile("foo/a.csv");
+
+        ResourceWriter writer = new ResourceWriter(1, new Configuration());
+        writer.add(new HiveResource("a.csv", "a"), target("foo/a.csv"), false);
+        writer.add(new HiveResource("b.csv", "b"), target("foo/b.csv"), false);
+        try {
+            writer.write();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Failed to create resource target file"));
+        }
+        Assert.assertFalse(Files.exists(tempFolder.getRoot().toPath().resolve("foo/b.csv")));
+    }
+
+    private String target(String relative) {
+        return tempFolder.getRoot().toPath().resolve(relative).toString();
+    }
+}
@@ -0,0 +1,4 @@
+SELECT foo.name, count(*)
+FROM foo
+JOIN bar ON (foo.id = bar.id)
+GROUP BY foo.name
@@ -0,0 +1,9 @@
+CREATE TABLE foo.managed (id int)
+ROW FORMAT DELIMITED FIELDS TERMINATED BY ','
+STORED AS TEXTFILE;
+
+LOAD DATA LOCAL INPATH '${hiveconf:hadoop.tmp.dir}/foo/bar/data.csv' INTO TABLE foo.managed;
+
+set snapshot.test.property=snapshotted;
+
+USE foo;